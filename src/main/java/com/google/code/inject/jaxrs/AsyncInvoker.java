@@ -0,0 +1,250 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.Response;
+
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.continuations.SuspendedInvocationException;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.jaxrs.JAXRSInvoker;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.jaxrs.utils.JAXRSUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.MessageContentsList;
+
+import com.google.code.inject.jaxrs.scope.GuiceInterceptorWrapper;
+
+/**
+ * Invoker for resource methods returning a <tt>CompletionStage</tt>.
+ * <p>
+ * The request is suspended with a CXF continuation instead of blocking the
+ * transport thread until the stage completes. The completing thread resumes
+ * it and the invocation is repeated without calling the resource method
+ * again, the value of the stage is written like a value returned by the
+ * resource method, with the type argument of the declared return type as the
+ * generic type. Failures are mapped like exceptions thrown by the resource
+ * method. When custom scopes are enabled the resumed invocation runs in the
+ * request scope of the exchange. Bind it with:
+ *
+ * <pre>
+ * invokeVia(AsyncInvoker.class);
+ *
+ * &#064;GET
+ * public CompletionStage&lt;Book&gt; getBook(&#064;PathParam(&quot;id&quot;) long id) {
+ * 	return books.fetch(id);
+ * }
+ * </pre>
+ *
+ * Stages that are also a <tt>Future</tt> and are already done are not
+ * suspended on. If the transport doesn't support continuations, or the
+ * invocation was dispatched with <tt>invokeOn()</tt>, the stage is awaited on
+ * the invoking thread. That thread keeps the request scope, so the stage must
+ * not wait for a task the scope is handed off to with
+ * <tt>CXFScopes.continueRequest()</tt>; tasks on the <tt>&#064;FanOut</tt>
+ * executor share the scope and can complete it.
+ */
+public class AsyncInvoker extends JAXRSInvoker {
+
+	/** Outcome of the stage an exchange was suspended on */
+	private static final class Pending {
+		final Type type;
+		volatile Object value;
+		volatile Throwable failure;
+
+		Pending(Type type) {
+			this.type = type;
+		}
+	}
+
+	@Override
+	public Object invoke(Exchange exchange, Object request) {
+		final Pending completed = (Pending) exchange.remove(Pending.class
+				.getName());
+		if (completed != null) {
+			// resumed after the stage completed
+			return outcome(exchange, completed.type, completed.value,
+					completed.failure);
+		}
+
+		final Object result = super.invoke(exchange, request);
+		final CompletionStage<?> stage = stageOf(result);
+		if (stage == null)
+			return result;
+
+		final Type type = entityType(exchange);
+		final ContinuationProvider provider = (ContinuationProvider) exchange
+				.getInMessage().get(ContinuationProvider.class.getName());
+		if (provider == null || GuiceInterceptorWrapper.isDispatched(exchange)
+				|| isDone(stage))
+			return await(exchange, type, stage);
+
+		final Continuation continuation = provider.getContinuation();
+		final Pending pending = new Pending(type);
+		exchange.put(Pending.class.getName(), pending);
+
+		final boolean suspended;
+		try {
+			suspended = continuation.suspend(0);
+		} catch (final SuspendedInvocationException e) {
+			resumeOnCompletion(stage, pending, continuation);
+			throw e;
+		}
+
+		if (!suspended) {
+			exchange.remove(Pending.class.getName());
+			return await(exchange, type, stage);
+		}
+		resumeOnCompletion(stage, pending, continuation);
+		return null;
+	}
+
+	private static CompletionStage<?> stageOf(Object result) {
+		if (!(result instanceof List))
+			return null;
+		final List<?> values = (List<?>) result;
+		if (values.size() != 1
+				|| !(values.get(0) instanceof CompletionStage))
+			return null;
+		return (CompletionStage<?>) values.get(0);
+	}
+
+	/**
+	 * Only stages that are a <tt>Future</tt> are asked, converting others
+	 * with <tt>toCompletableFuture()</tt> may not be supported. Minimal stages
+	 * are futures that don't support it either.
+	 */
+	private static boolean isDone(CompletionStage<?> stage) {
+		try {
+			return stage instanceof Future && ((Future<?>) stage).isDone();
+		} catch (final UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return type argument of the <tt>CompletionStage</tt> returned by the
+	 *         invoked method, or <tt>null</tt> if it can't be resolved
+	 */
+	private static Type entityType(Exchange exchange) {
+		final OperationResourceInfo ori = exchange
+				.get(OperationResourceInfo.class);
+		if (ori == null)
+			return null;
+		final Method method = ori.getMethodToInvoke();
+		final Type returnType = method.getGenericReturnType();
+		if (!(returnType instanceof ParameterizedType))
+			return null;
+		final ParameterizedType stageType = (ParameterizedType) returnType;
+		final Type[] arguments = stageType.getActualTypeArguments();
+		if (arguments.length != 1)
+			return null;
+		return (arguments[0] instanceof Class || arguments[0] instanceof ParameterizedType) ? arguments[0]
+				: null;
+	}
+
+	private static Class<?> rawType(Type type) {
+		return (type instanceof Class) ? (Class<?>) type
+				: (Class<?>) ((ParameterizedType) type).getRawType();
+	}
+
+	private static void resumeOnCompletion(CompletionStage<?> stage,
+			final Pending pending, final Continuation continuation) {
+		stage.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object value, Throwable failure) {
+				pending.value = value;
+				pending.failure = failure;
+				continuation.resume();
+			}
+		});
+	}
+
+	private static Object await(Exchange exchange, Type type,
+			CompletionStage<?> stage) {
+		try {
+			if (!(stage instanceof Future))
+				return awaitCompletion(exchange, type, stage);
+
+			final Object value;
+			try {
+				value = ((Future<?>) stage).get();
+			} catch (final UnsupportedOperationException e) {
+				// a minimal stage
+				return awaitCompletion(exchange, type, stage);
+			}
+			return outcome(exchange, type, value, null);
+		} catch (final ExecutionException e) {
+			return outcome(exchange, type, null, e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Fault(e);
+		}
+	}
+
+	private static Object awaitCompletion(Exchange exchange, Type type,
+			CompletionStage<?> stage) throws InterruptedException {
+		final Pending pending = new Pending(type);
+		final CountDownLatch latch = new CountDownLatch(1);
+		stage.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object value, Throwable failure) {
+				pending.value = value;
+				pending.failure = failure;
+				latch.countDown();
+			}
+		});
+		latch.await();
+		return outcome(exchange, type, pending.value, pending.failure);
+	}
+
+	private static Object outcome(Exchange exchange, Type type, Object value,
+			Throwable failure) {
+		if (failure != null) {
+			while ((failure instanceof CompletionException || failure instanceof ExecutionException)
+					&& failure.getCause() != null)
+				failure = failure.getCause();
+
+			// mapped like exceptions thrown by the resource method
+			final Response response = JAXRSUtils.convertFaultToResponse(
+					failure, exchange.getInMessage());
+			if (response == null)
+				throw (failure instanceof Fault) ? (Fault) failure : new Fault(
+						failure);
+			return new MessageContentsList(response);
+		}
+
+		if (value != null && type != null && !(value instanceof Response)
+				&& !(value instanceof GenericEntity)
+				&& rawType(type).isInstance(value))
+			value = new GenericEntity<Object>(value, type);
+		return new MessageContentsList(new Object[] { value });
+	}
+
+}
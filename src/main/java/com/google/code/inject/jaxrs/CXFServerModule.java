@@ -15,21 +15,30 @@
  */
 package com.google.code.inject.jaxrs;
 
+import static com.google.code.inject.jaxrs.scope.GuiceInterceptorWrapper.DISPATCHER;
 import static com.google.code.inject.jaxrs.util.BindingProvider.provideBinding;
 import static com.google.code.inject.jaxrs.util.Matchers.resourceMethod;
 import static com.google.inject.Scopes.SINGLETON;
+import static com.google.inject.internal.util.$Preconditions.checkArgument;
 import static com.google.inject.internal.util.$Preconditions.checkNotNull;
 import static com.google.inject.internal.util.$Preconditions.checkState;
 import static com.google.inject.matcher.Matchers.any;
 import static com.google.inject.multibindings.Multibinder.newSetBinder;
 import static com.google.inject.name.Names.named;
+import static java.lang.reflect.Modifier.isAbstract;
+import static java.lang.reflect.Modifier.isInterface;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 
+import org.apache.cxf.feature.AbstractFeature;
 import org.apache.cxf.interceptor.Interceptor;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.ext.RequestHandler;
@@ -40,12 +49,27 @@ import org.apache.cxf.service.invoker.Invoker;
 import com.google.code.inject.jaxrs.internal.DefaultInvoker;
 import com.google.code.inject.jaxrs.internal.JaxRsProvider;
 import com.google.code.inject.jaxrs.internal.SubresourceInterceptor;
+import com.google.code.inject.jaxrs.internal.VirtualThreadExecutorProvider;
+import com.google.code.inject.jaxrs.metrics.AdminResource;
+import com.google.code.inject.jaxrs.metrics.LatencyFeature;
+import com.google.code.inject.jaxrs.metrics.LatencyMetrics;
+import com.google.code.inject.jaxrs.metrics.MBeans;
+import com.google.code.inject.jaxrs.metrics.MBeansFeature;
+import com.google.code.inject.jaxrs.metrics.PhaseTracing;
+import com.google.code.inject.jaxrs.metrics.PhaseTracingFeature;
+import com.google.code.inject.jaxrs.scope.AllocationMetrics;
 import com.google.code.inject.jaxrs.scope.CXFScopes;
+import com.google.code.inject.jaxrs.scope.FanOut;
+import com.google.code.inject.jaxrs.scope.FanOutExecutorProvider;
 import com.google.code.inject.jaxrs.scope.GuiceInterceptorWrapper;
-import com.google.code.inject.jaxrs.util.ParametrizedType;
+import com.google.code.inject.jaxrs.scope.MemoizingEntityReader;
+import com.google.code.inject.jaxrs.scope.RequestEntity;
+import com.google.code.inject.jaxrs.scope.RequestScopeMetrics;
 import com.google.inject.Binder;
 import com.google.inject.Key;
 import com.google.inject.Module;
+import com.google.inject.PrivateBinder;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.Multibinder;
@@ -81,10 +105,15 @@ import com.google.inject.multibindings.Multibinder;
  * <p>
  * Use <tt>publish()</tt> to register a resource class - a custom
  * <tt>ResourceProvider</tt> will be bound for each resource class. It's a
- * 'per-exchange' type and will get a new instance for each incoming exchange.
+ * 'per-exchange' type and will get a new instance for each incoming exchange,
+ * unless the resource is bound in singleton scope. Singleton resources are
+ * created once and must not depend directly on request scoped objects. Use
+ * <tt>publish(...).pooled(size)</tt> to reuse instances of resources that are
+ * expensive to create.
  * </p>
  * <p>
- * Use <tt>serve()</tt> to configure server, e.g. set the root address.
+ * Use <tt>serve()</tt> to configure server, e.g. set the root address or
+ * run invocations on virtual threads with <tt>onVirtualThreads()</tt>.
  * </p>
  * <p>
  * The following methods let you register JAX-RS <tt>@Provider</tt>s:
@@ -111,7 +140,9 @@ import com.google.inject.multibindings.Multibinder;
  * be passed to the <tt>ServerFactoryBean</tt>, regardless of the scope.</i>
  * </p>
  * <p>
- * Use <tt>invokeVia()</tt> to register custom invoker.
+ * Use <tt>invokeVia()</tt> to register custom invoker, e.g. the
+ * <tt>{@link MethodHandleInvoker}</tt>, or the <tt>{@link AsyncInvoker}</tt>
+ * for resource methods returning a <tt>CompletionStage</tt>.
  * </p>
  * <h3>Binding resources and providers</h3>
  * <p>
@@ -156,8 +187,11 @@ import com.google.inject.multibindings.Multibinder;
  * </p>
  * <p>
  * A set of <tt>ResourceProvider</tt>s will be bound using the multibinder. For
- * each resource class a <tt>{@link GuicePerRequestResourceProvider}</tt>
- * parametrized with the resource type will be registered.
+ * each resource class a <tt>{@link GuicePerRequestResourceProvider}</tt> or,
+ * for singleton resources, a <tt>{@link GuiceSingletonResourceProvider}</tt>
+ * will be registered. Pooled resources get a
+ * <tt>{@link GuicePooledResourceProvider}</tt>, which also implements
+ * <tt>{@link ResourcePoolStatistics}</tt>.
  * </p>
  * <p>
  * A <tt>Set&lt;Object&gt;</tt> annotated with <tt>{@link JaxRsProvider}</tt>
@@ -175,6 +209,31 @@ import com.google.inject.multibindings.Multibinder;
  * With the exception of <tt>{@link ServerConfiguration}</tt> bean no instances
  * of business classes are created during binding.
  * </p>
+ *
+ * <h3>Multiple endpoints</h3>
+ *
+ * To serve several independent endpoints from one injector create each
+ * module with a binding annotation:
+ *
+ * <pre>
+ * install(new CXFServerModule(Internal.class) {
+ * 	protected void configure() {
+ * 		serve().atAddress(&quot;/internal&quot;);
+ * 		publish(InternalResource.class);
+ * 	}
+ * });
+ * </pre>
+ * <p>
+ * A qualified module makes its bindings in a private environment, so each
+ * endpoint has its own resources, providers, interceptors and features. Only
+ * the <tt>JAXRSServerFactoryBean</tt> and the
+ * <tt>{@link ServerConfiguration}</tt> are exposed, annotated with the
+ * module's annotation. Published classes are bound in the private
+ * environment too, so don't bind them in the injector. A qualified module
+ * can't be combined with an unqualified one in the same injector. If a
+ * <tt>Bus</tt> is bound with <tt>&#064;Named({@link #SERVER_BUS})</tt> all
+ * endpoints use it, otherwise they share the default bus.
+ * </p>
  */
 public abstract class CXFServerModule implements Module {
 
@@ -215,12 +274,79 @@ public abstract class CXFServerModule implements Module {
 
 	}
 
+	protected final class ResourceBuilder {
+		private final GuiceResourceProviderFactory<?> factory;
+
+		private ResourceBuilder(GuiceResourceProviderFactory<?> factory) {
+			this.factory = factory;
+		}
+
+		/**
+		 * Reuse resource instances between exchanges.
+		 * <p>
+		 * The resource must be unscoped. At most <tt>size</tt> instances will
+		 * be live at a time, exchanges arriving when all are in use don't wait
+		 * and are served by a new instance, not returned to the pool.
+		 * Resources implementing {@link PooledResource} are reset before being
+		 * returned to the pool.
+		 *
+		 * @param size
+		 *            pool capacity
+		 */
+		public void pooled(int size) {
+			pooled(size, 0, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Reuse resource instances between exchanges, waiting at most
+		 * <tt>timeout</tt> for a free instance.
+		 * <p>
+		 * The wait blocks the thread serving the exchange, usually a transport
+		 * thread, so a saturated pool holds up the connector for as long as the
+		 * timeout. Keep it in the order of the time an instance is in use.
+		 *
+		 * @param size
+		 *            pool capacity
+		 * @param timeout
+		 *            how long an exchange waits for an instance, 0 to fail
+		 *            immediately
+		 * @param unit
+		 *            unit of the timeout
+		 * @see #pooled(int)
+		 */
+		public void pooled(int size, long timeout, TimeUnit unit) {
+			factory.setPool(size, unit.toMillis(timeout));
+		}
+	}
+
 	private final class ServerConfig implements ServerConfiguration,
 			ServerConfigurationBuilder {
 		private String address = "/";
 		private boolean staticResourceResolution = false;
 		private boolean scopesEnabled = false;
 		private boolean subinjectionEnabled = false;
+		private boolean dispatcherBound = false;
+		private boolean fanOutBound = false;
+		private boolean scopeMetricsEnabled = false;
+		private boolean allocationSamplingEnabled = false;
+		private boolean latencyHistogramsEnabled = false;
+		private boolean phaseTracingEnabled = false;
+		private boolean requestEntityMemoized = false;
+		private String adminPath = null;
+		private MBeans mbeans = null;
+
+		/**
+		 * Registrations of the server's statistics, unregistered when the
+		 * server is stopped
+		 */
+		private MBeans mbeans() {
+			if (mbeans == null) {
+				mbeans = MBeans.forServer(serverName());
+				binder().bind(MBeans.class).toInstance(mbeans);
+				features.addBinding().to(MBeansFeature.class);
+			}
+			return mbeans;
+		}
 
 		@Override
 		public ServerConfigurationBuilder atAddress(String address) {
@@ -230,23 +356,153 @@ public abstract class CXFServerModule implements Module {
 
 		@Override
 		public ServerConfigurationBuilder enableCustomScopes() {
-			checkState(!scopesEnabled, "Custom scopes already enabled");
-			binder().install(new CXFScopes.Module());
-			inInterceptors.addBinding().to(GuiceInterceptorWrapper.class);
-			scopesEnabled = true;
+			if (!scopesEnabled) {
+				binder().install(new CXFScopes.Module());
+				inInterceptors.addBinding().to(GuiceInterceptorWrapper.class);
+				scopesEnabled = true;
+			}
 			return this;
 		}
 
+		@Override
+		public String getAdminPath() {
+			return adminPath;
+		}
+
+		@Override
+		public boolean isRequestEntityMemoized() {
+			return requestEntityMemoized;
+		}
+
 		@Override
 		public String getAddress() {
 			return address;
 		}
 
+		@Override
+		public ServerConfigurationBuilder invokeOn(
+				Class<? extends Executor> type) {
+			return invokeOn(Key.get(type));
+		}
+
+		@Override
+		public ServerConfigurationBuilder invokeOn(Key<? extends Executor> key) {
+			checkState(!dispatcherBound, "Dispatch executor already bound");
+			binder().bind(Executor.class).annotatedWith(named(DISPATCHER))
+					.to(key);
+			dispatcherBound = true;
+			return enableCustomScopes();
+		}
+
 		@Override
 		public boolean isStaticResourceResolution() {
 			return staticResourceResolution;
 		}
 
+		@Override
+		public ServerConfigurationBuilder onVirtualThreads() {
+			checkState(!dispatcherBound, "Dispatch executor already bound");
+			binder().bind(Executor.class).annotatedWith(named(DISPATCHER))
+					.toProvider(VirtualThreadExecutorProvider.class)
+					.in(SINGLETON);
+			dispatcherBound = true;
+			return enableCustomScopes();
+		}
+
+		@Override
+		public ServerConfigurationBuilder fanOutOn(
+				Class<? extends Executor> type, int parallelism) {
+			return fanOutOn(Key.get(type), parallelism);
+		}
+
+		@Override
+		public ServerConfigurationBuilder fanOutOn(
+				Key<? extends Executor> key, int parallelism) {
+			checkState(!fanOutBound, "Fan-out executor already bound");
+			checkArgument(parallelism > 0, "parallelism must be positive");
+			binder().bind(Executor.class)
+					.annotatedWith(named(FanOutExecutorProvider.EXECUTOR))
+					.to(key);
+			binder().bindConstant()
+					.annotatedWith(named(FanOutExecutorProvider.PARALLELISM))
+					.to(parallelism);
+			binder().bind(ExecutorService.class).annotatedWith(FanOut.class)
+					.toProvider(FanOutExecutorProvider.class)
+					.in(CXFScopes.REQUEST);
+			fanOutBound = true;
+			return enableCustomScopes();
+		}
+
+		@Override
+		public ServerConfigurationBuilder withScopeMetrics() {
+			checkState(!scopeMetricsEnabled, "Scope metrics already enabled");
+			final MBeans mbeans = mbeans();
+			binder().bind(RequestScopeMetrics.class)
+					.toProvider(new Provider<RequestScopeMetrics>() {
+						@Override
+						public RequestScopeMetrics get() {
+							return RequestScopeMetrics.create(mbeans);
+						}
+					}).asEagerSingleton();
+			scopeMetricsEnabled = true;
+			return enableCustomScopes();
+		}
+
+		@Override
+		public ServerConfigurationBuilder withAllocationSampling(
+				final int sampling) {
+			checkState(!allocationSamplingEnabled,
+					"Allocation sampling already enabled");
+			checkArgument(sampling > 0, "sampling must be positive");
+			final MBeans mbeans = mbeans();
+			binder().bind(AllocationMetrics.class)
+					.toProvider(new Provider<AllocationMetrics>() {
+						@Override
+						public AllocationMetrics get() {
+							return AllocationMetrics.create(sampling, mbeans);
+						}
+					}).asEagerSingleton();
+			allocationSamplingEnabled = true;
+			return enableCustomScopes();
+		}
+
+		@Override
+		public ServerConfigurationBuilder withLatencyHistograms() {
+			checkState(!latencyHistogramsEnabled,
+					"Latency histograms already enabled");
+			mbeans();
+			binder().bind(LatencyMetrics.class).in(SINGLETON);
+			features.addBinding().to(LatencyFeature.class);
+			latencyHistogramsEnabled = true;
+			return this;
+		}
+
+		@Override
+		public ServerConfigurationBuilder withPhaseTracing(int sampling,
+				long slowThreshold, TimeUnit unit) {
+			checkState(!phaseTracingEnabled, "Phase tracing already enabled");
+			binder().bind(PhaseTracing.class).toInstance(
+					new PhaseTracing(sampling, slowThreshold, unit, mbeans()));
+			features.addBinding().to(PhaseTracingFeature.class);
+			phaseTracingEnabled = true;
+			return this;
+		}
+
+		@Override
+		public ServerConfigurationBuilder withAdminEndpoint(String path) {
+			checkNotNull(path, "path");
+			checkState(adminPath == null, "Admin endpoint already published");
+			publish(AdminResource.class);
+			adminPath = path;
+			return this;
+		}
+
+		@Override
+		public ServerConfigurationBuilder withMemoizedRequestEntity() {
+			requestEntityMemoized = true;
+			return enableCustomScopes();
+		}
+
 		@Override
 		public ServerConfigurationBuilder withStaticResourceResolution() {
 			this.staticResourceResolution = true;
@@ -273,6 +529,18 @@ public abstract class CXFServerModule implements Module {
 
 		String getAddress();
 
+		/**
+		 * @return path of the {@link AdminResource}, or null if it's not
+		 *         published
+		 */
+		String getAdminPath();
+
+		/**
+		 * @return whether entity readers are wrapped in a
+		 *         {@link MemoizingEntityReader}
+		 */
+		boolean isRequestEntityMemoized();
+
 		boolean isStaticResourceResolution();
 
 	}
@@ -293,11 +561,152 @@ public abstract class CXFServerModule implements Module {
 
 		/**
 		 * Enable CXF-specifix scopes
+		 * <p>
+		 * Other options may imply it, calling it again has no effect.
 		 *
 		 * @return self
 		 */
 		ServerConfigurationBuilder enableCustomScopes();
 
+		/**
+		 * Run resource invocations on the given executor, releasing the
+		 * transport thread for the duration of the invocation.
+		 * <p>
+		 * Requires a transport supporting CXF continuations, otherwise the
+		 * invocation runs on the transport thread. Implies
+		 * {@link #enableCustomScopes()}
+		 *
+		 * @param type
+		 *            executor to bind
+		 * @return self
+		 */
+		ServerConfigurationBuilder invokeOn(Class<? extends Executor> type);
+
+		/**
+		 * Run resource invocations on the given executor.
+		 *
+		 * @param key
+		 *            executor to bind
+		 * @return self
+		 * @see #invokeOn(Class)
+		 */
+		ServerConfigurationBuilder invokeOn(Key<? extends Executor> key);
+
+		/**
+		 * Run each resource invocation on a new virtual thread. Requires Java
+		 * 21 at runtime, the request scope is carried as with
+		 * {@link #invokeOn(Class)}.
+		 *
+		 * @return self
+		 * @see #invokeOn(Class)
+		 */
+		ServerConfigurationBuilder onVirtualThreads();
+
+		/**
+		 * Bind a request scoped {@link FanOut} <tt>ExecutorService</tt>
+		 * running tasks on the given executor, in the request scope of the
+		 * exchange that submitted them. Implies {@link #enableCustomScopes()}
+		 *
+		 * @param type
+		 *            executor shared by all exchanges
+		 * @param parallelism
+		 *            maximum number of tasks of a single exchange running at
+		 *            the same time
+		 * @return self
+		 * @see FanOutExecutorProvider
+		 */
+		ServerConfigurationBuilder fanOutOn(Class<? extends Executor> type,
+				int parallelism);
+
+		/**
+		 * Bind a request scoped {@link FanOut} <tt>ExecutorService</tt>.
+		 *
+		 * @param key
+		 *            executor shared by all exchanges
+		 * @param parallelism
+		 *            maximum number of tasks of a single exchange running at
+		 *            the same time
+		 * @return self
+		 * @see #fanOutOn(Class, int)
+		 */
+		ServerConfigurationBuilder fanOutOn(Key<? extends Executor> key,
+				int parallelism);
+
+		/**
+		 * Collect provisioning metrics of the request scope and expose them
+		 * over JMX. Binds the {@link RequestScopeMetrics}. Implies
+		 * {@link #enableCustomScopes()}
+		 *
+		 * @return self
+		 */
+		ServerConfigurationBuilder withScopeMetrics();
+
+		/**
+		 * Measure the bytes allocated by resource invocations, per resource
+		 * method, and expose them over JMX. Binds the
+		 * {@link AllocationMetrics}. Implies {@link #enableCustomScopes()}
+		 *
+		 * @param sampling
+		 *            measure one in <tt>sampling</tt> invocations
+		 * @return self
+		 */
+		ServerConfigurationBuilder withAllocationSampling(int sampling);
+
+		/**
+		 * Record server-side latency, response status classes and body bytes
+		 * of each resource method and expose them over JMX. Binds the
+		 * {@link LatencyMetrics}.
+		 *
+		 * @return self
+		 */
+		ServerConfigurationBuilder withLatencyHistograms();
+
+		/**
+		 * Time each phase and interceptor of the in, out and out fault
+		 * interceptor chains of sampled requests and expose the timings over
+		 * JMX. Sampled requests taking at least <tt>slowThreshold</tt> are
+		 * logged with their full breakdown. Binds the {@link PhaseTracing}.
+		 *
+		 * @param sampling
+		 *            trace one in <tt>sampling</tt> requests
+		 * @param slowThreshold
+		 *            log traced requests taking at least this long
+		 * @param unit
+		 *            unit of the threshold
+		 * @return self
+		 */
+		ServerConfigurationBuilder withPhaseTracing(int sampling,
+				long slowThreshold, TimeUnit unit);
+
+		/**
+		 * Publish the {@link AdminResource} at <tt>path</tt>, relative to
+		 * the server address. It serves the enabled metrics in the
+		 * Prometheus text format at <tt>{path}/metrics</tt> and a JSON dump
+		 * of the resources, providers and interceptor chains at
+		 * <tt>{path}/config</tt>. Metric names start with
+		 * <tt>guice_cxf_</tt>.
+		 * <p>
+		 * The admin resource has no access control of its own and exposes
+		 * implementation details, restrict access to the path or use a
+		 * qualified module to publish it on a separate, internal server.
+		 *
+		 * @param path
+		 *            path of the admin resource, e.g. <tt>/_admin</tt>
+		 * @return self
+		 */
+		ServerConfigurationBuilder withAdminEndpoint(String path);
+
+		/**
+		 * Let resource methods get the {@link RequestEntity} already read in
+		 * the exchange as their entity parameter, instead of reading the body
+		 * again. Every <tt>MessageBodyReader</tt> registered with the module
+		 * is wrapped in a {@link MemoizingEntityReader}, which is selected in
+		 * place of untyped readers. Implies {@link #enableCustomScopes()}
+		 *
+		 * @return self
+		 */
+		ServerConfigurationBuilder withMemoizedRequestEntity();
+
 		/**
 		 * Use static resource resolution
 		 *
@@ -318,6 +727,12 @@ public abstract class CXFServerModule implements Module {
 
 	static final String DIRECTION_IN = "in";
 	static final String DIRECTION_OUT = "out";
+	static final String FEATURES = "features";
+
+	/**
+	 * Name of the optional <tt>Bus</tt> binding the servers are created on
+	 */
+	public static final String SERVER_BUS = "guice-cxf.bus";
 
 	private ServerConfig config;
 
@@ -328,13 +743,62 @@ public abstract class CXFServerModule implements Module {
 
 	private Multibinder<Object> providers;
 
+	private Multibinder<AbstractFeature> features;
+
 	private Multibinder<ResourceProvider> resourceProviders;
 	private Binder binder;
 
+	/** exposed factory bean key of a qualified module, null otherwise */
+	private final Key<JAXRSServerFactoryBean> serverKey;
+	private final Key<ServerConfiguration> configurationKey;
+
+	protected CXFServerModule() {
+		this.serverKey = null;
+		this.configurationKey = null;
+	}
+
+	/**
+	 * Create a module serving an endpoint qualified with an annotation
+	 *
+	 * @param annotation
+	 *            annotation of the exposed <tt>JAXRSServerFactoryBean</tt>
+	 *            and <tt>ServerConfiguration</tt>
+	 */
+	protected CXFServerModule(Annotation annotation) {
+		checkNotNull(annotation, "annotation");
+		this.serverKey = Key.get(JAXRSServerFactoryBean.class, annotation);
+		this.configurationKey = Key.get(ServerConfiguration.class, annotation);
+	}
+
+	/**
+	 * Create a module serving an endpoint qualified with an annotation
+	 *
+	 * @param annotationType
+	 *            annotation of the exposed <tt>JAXRSServerFactoryBean</tt>
+	 *            and <tt>ServerConfiguration</tt>
+	 */
+	protected CXFServerModule(Class<? extends Annotation> annotationType) {
+		checkNotNull(annotationType, "annotationType");
+		this.serverKey = Key.get(JAXRSServerFactoryBean.class, annotationType);
+		this.configurationKey = Key.get(ServerConfiguration.class,
+				annotationType);
+	}
+
 	private Binder binder() {
 		return binder;
 	}
 
+	/**
+	 * @return qualifier of the module, or {@link MBeans#DEFAULT_SERVER}
+	 */
+	private String serverName() {
+		if (serverKey == null)
+			return MBeans.DEFAULT_SERVER;
+		return (serverKey.getAnnotation() != null) ? serverKey
+				.getAnnotation().toString() : "@"
+				+ serverKey.getAnnotationType().getName();
+	}
+
 	@Override
 	public final void configure(Binder binder) {
 		checkState(this.binder == null, "Re-entry is not allowed.");
@@ -342,9 +806,13 @@ public abstract class CXFServerModule implements Module {
 		checkState(this.inInterceptors == null, "Re-entry is not allowed.");
 		checkState(this.outInterceptors == null, "Re-entry is not allowed.");
 		checkState(this.providers == null, "Re-entry is not allowed.");
+		checkState(this.features == null, "Re-entry is not allowed.");
 		checkState(this.config == null, "Re-entry is not allowed.");
 
-		this.binder = binder.skipSources(CXFServerModule.class);
+		final PrivateBinder privateBinder = (serverKey != null) ? binder
+				.newPrivateBinder().skipSources(CXFServerModule.class) : null;
+		this.binder = (privateBinder != null) ? privateBinder : binder
+				.skipSources(CXFServerModule.class);
 
 		resourceProviders = newSetBinder(binder(), ResourceProvider.class);
 		inInterceptors = newSetBinder(binder(),
@@ -354,6 +822,8 @@ public abstract class CXFServerModule implements Module {
 				new TypeLiteral<Interceptor<?>>() {
 				}, named(DIRECTION_OUT));
 		providers = newSetBinder(binder(), Object.class, JaxRsProvider.class);
+		features = newSetBinder(binder(), AbstractFeature.class,
+				named(FEATURES));
 
 		config = new ServerConfig();
 		customInvoker = false;
@@ -370,6 +840,14 @@ public abstract class CXFServerModule implements Module {
 				binder().bind(Invoker.class).to(DefaultInvoker.class)
 						.in(SINGLETON);
 
+			if (privateBinder != null) {
+				privateBinder.bind(serverKey).to(JAXRSServerFactoryBean.class);
+				privateBinder.expose(serverKey);
+				privateBinder.bind(configurationKey).to(
+						ServerConfiguration.class);
+				privateBinder.expose(configurationKey);
+			}
+
 		} finally {
 			binder = null;
 			resourceProviders = null;
@@ -377,6 +855,7 @@ public abstract class CXFServerModule implements Module {
 			outInterceptors = null;
 			outInterceptors = null;
 			providers = null;
+			features = null;
 			config = null;
 		}
 	}
@@ -481,23 +960,28 @@ public abstract class CXFServerModule implements Module {
 	 *
 	 * @param resourceKey
 	 *            to bind
+	 * @return builder for resource options
 	 */
-	private final <T> void publish(final Key<T> resourceKey) {
+	private final <T> ResourceBuilder publish(final Key<T> resourceKey) {
 		checkNotNull(resourceKey);
-		final Type[] arguments = new Type[] { resourceKey.getTypeLiteral()
-				.getType() };
 
-		final Key<? extends ResourceProvider> providerKey = new ParametrizedType(
-				GuicePerRequestResourceProvider.class) {
+		// a class bound just-in-time would be bound by the parent injector,
+		// outside the interceptors and scopes of the private environment
+		if (serverKey != null && isConcrete(resourceKey))
+			binder().bind(resourceKey);
 
-			public Type[] getActualTypeArguments() {
-				return arguments;
-			}
-		}.asKey();
+		final GuiceResourceProviderFactory<T> factory = new GuiceResourceProviderFactory<T>(
+				provideBinding(binder(), resourceKey));
 
-		resourceProviders.addBinding().to(providerKey).in(Singleton.class);
+		resourceProviders.addBinding().toProvider(factory).in(Singleton.class);
+
+		return new ResourceBuilder(factory);
+	}
 
-		provideBinding(binder(), resourceKey);
+	private static boolean isConcrete(Key<?> key) {
+		final int modifiers = key.getTypeLiteral().getRawType().getModifiers();
+		return key.getAnnotationType() == null && !isInterface(modifiers)
+				&& !isAbstract(modifiers);
 	}
 
 	/**
@@ -505,10 +989,11 @@ public abstract class CXFServerModule implements Module {
 	 *
 	 * @param type
 	 *            to bind
+	 * @return builder for resource options
 	 */
-	protected final void publish(final Type type) {
+	protected final ResourceBuilder publish(final Type type) {
 		checkNotNull(type);
-		publish(Key.get(type));
+		return publish(Key.get(type));
 	}
 
 	/**
@@ -516,10 +1001,11 @@ public abstract class CXFServerModule implements Module {
 	 *
 	 * @param type
 	 *            to bind
+	 * @return builder for resource options
 	 */
-	protected final <T> void publish(final TypeLiteral<T> type) {
+	protected final <T> ResourceBuilder publish(final TypeLiteral<T> type) {
 		checkNotNull(type);
-		publish(Key.get(type));
+		return publish(Key.get(type));
 	}
 
 	protected final void readBody(Class<? extends MessageBodyReader<?>> type) {
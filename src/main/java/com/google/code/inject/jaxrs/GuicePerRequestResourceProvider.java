@@ -21,6 +21,7 @@ import static com.google.inject.Scopes.NO_SCOPE;
 import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
 import org.apache.cxf.message.Message;
 
+import com.google.code.inject.jaxrs.internal.FlightRecorderEvents;
 import com.google.code.inject.jaxrs.util.BindingProvider;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -45,7 +46,10 @@ class GuicePerRequestResourceProvider<T> implements ResourceProvider {
 
 	@Override
 	public Object getInstance(Message m) {
-		return provider.get();
+		final Object event = FlightRecorderEvents.beginResourceCreation();
+		final T instance = provider.get();
+		FlightRecorderEvents.endResourceCreation(event, actualType);
+		return instance;
 	}
 
 	@Override
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static com.google.inject.Scopes.NO_SCOPE;
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.WARNING;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+import org.apache.cxf.message.Message;
+
+import com.google.code.inject.jaxrs.util.BindingProvider;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+import com.google.inject.Scope;
+
+/**
+ * Resource provider keeping a bounded pool of instances.
+ * <p>
+ * At most <tt>capacity</tt> pooled instances are live at any time. Requests
+ * finding all of them in use are served by a new instance that is discarded
+ * afterwards, either right away or, if a timeout is set, when no instance was
+ * released within the timeout. Idle instances are kept in stripes selected by
+ * the requesting thread to reduce contention.
+ */
+class GuicePooledResourceProvider<T> implements ResourceProvider,
+		ResourcePoolStatistics {
+
+	private final static Logger logger = Logger
+			.getLogger(GuicePooledResourceProvider.class.getName());
+
+	/** Marks messages served by an instance created after a timeout */
+	private static final String UNPOOLED = GuicePooledResourceProvider.class
+			.getName() + ".unpooled";
+
+	private static int stripesFor(int capacity) {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < processors && stripes * 2 <= capacity)
+			stripes *= 2;
+		return stripes;
+	}
+
+	private final Provider<T> provider;
+	private final Class<?> actualType;
+	private final int capacity;
+	private final long timeoutMillis;
+
+	private final AtomicReferenceArray<Object> idle;
+	private final int stripeMask;
+	private final Semaphore permits;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+
+	protected GuicePooledResourceProvider(BindingProvider<T> binding,
+			Provider<T> provider, int capacity, long timeoutMillis) {
+		final Scope scope = binding.getScope();
+		if (NO_SCOPE != scope)
+			throw new ProvisionException("Invalid scope " + scope + " of "
+					+ binding.getKey() + ", pooled resources must be unscoped");
+		this.actualType = binding.getActualType();
+		this.provider = provider;
+		this.capacity = capacity;
+		this.timeoutMillis = timeoutMillis;
+		this.idle = new AtomicReferenceArray<Object>(capacity);
+		this.stripeMask = stripesFor(capacity) - 1;
+		this.permits = new Semaphore(capacity);
+	}
+
+	@Override
+	public Object getInstance(Message m) {
+		if (!permits.tryAcquire() && !awaitPermit()) {
+			m.put(UNPOOLED, Boolean.TRUE);
+			return provider.get();
+		}
+
+		final Object pooled = poll();
+		if (pooled != null) {
+			hits.incrementAndGet();
+			return pooled;
+		}
+
+		misses.incrementAndGet();
+		try {
+			return provider.get();
+		} catch (final RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private boolean awaitPermit() {
+		boolean acquired = false;
+		if (timeoutMillis > 0) {
+			waits.incrementAndGet();
+			try {
+				acquired = permits.tryAcquire(timeoutMillis, MILLISECONDS);
+			} catch (final InterruptedException e) {
+				currentThread().interrupt();
+			}
+		}
+		if (!acquired) {
+			timeouts.incrementAndGet();
+			logger.fine("No instance of " + actualType + " released within "
+					+ timeoutMillis + " ms, creating an unpooled one");
+		}
+		return acquired;
+	}
+
+	@Override
+	public void releaseInstance(Message m, Object o) {
+		if (m.remove(UNPOOLED) != null)
+			return;
+		try {
+			if (o instanceof PooledResource)
+				((PooledResource) o).reset();
+			offer(o);
+		} catch (final RuntimeException e) {
+			logger.log(WARNING, "Discarding pooled instance of " + actualType,
+					e);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private Object poll() {
+		final int start = stripeStart();
+		for (int i = 0; i < capacity; i++) {
+			final int slot = (start + i) % capacity;
+			final Object o = idle.get(slot);
+			if (o != null && idle.compareAndSet(slot, o, null))
+				return o;
+		}
+		return null;
+	}
+
+	private void offer(Object o) {
+		final int start = stripeStart();
+		for (int i = 0; i < capacity; i++) {
+			if (idle.compareAndSet((start + i) % capacity, null, o))
+				return;
+		}
+		// can only happen when racing with other threads, let it be collected
+	}
+
+	private int stripeStart() {
+		final int stripe = (int) currentThread().getId() & stripeMask;
+		return stripe * capacity / (stripeMask + 1);
+	}
+
+	@Override
+	public Class<?> getResourceClass() {
+		return actualType;
+	}
+
+	@Override
+	public boolean isSingleton() {
+		return false;
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public int getIdle() {
+		int count = 0;
+		for (int i = 0; i < capacity; i++)
+			if (idle.get(i) != null)
+				count++;
+		return count;
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public long getWaits() {
+		return waits.get();
+	}
+
+	@Override
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+}
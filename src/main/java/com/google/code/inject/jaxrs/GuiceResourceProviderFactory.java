@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static com.google.inject.internal.util.$Preconditions.checkArgument;
+import static com.google.inject.internal.util.$Preconditions.checkState;
+import static com.google.inject.Scopes.SINGLETON;
+
+import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+
+import com.google.code.inject.jaxrs.util.BindingProvider;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+
+/**
+ * Selects the <tt>ResourceProvider</tt> implementation matching the scope of
+ * the resource binding and the options set when publishing it.
+ */
+class GuiceResourceProviderFactory<T> implements Provider<ResourceProvider> {
+
+	private final BindingProvider<T> binding;
+	private Injector injector;
+	private int poolSize;
+	private long poolTimeoutMillis;
+
+	GuiceResourceProviderFactory(BindingProvider<T> binding) {
+		this.binding = binding;
+	}
+
+	void setPool(int poolSize, long timeoutMillis) {
+		checkArgument(poolSize > 0, "Pool size must be positive");
+		checkArgument(timeoutMillis >= 0, "Pool timeout must not be negative");
+		checkState(this.poolSize == 0, "Pool size already set");
+		this.poolSize = poolSize;
+		this.poolTimeoutMillis = timeoutMillis;
+	}
+
+	@Inject
+	void setInjector(Injector injector) {
+		this.injector = injector;
+	}
+
+	@Override
+	public ResourceProvider get() {
+		final Provider<T> provider = injector.getProvider(binding.getKey());
+
+		if (poolSize > 0)
+			return new GuicePooledResourceProvider<T>(binding, provider,
+					poolSize, poolTimeoutMillis);
+
+		if (SINGLETON == binding.getScope())
+			return new GuiceSingletonResourceProvider<T>(binding, provider,
+					injector);
+
+		return new GuicePerRequestResourceProvider<T>(binding, provider);
+	}
+
+}
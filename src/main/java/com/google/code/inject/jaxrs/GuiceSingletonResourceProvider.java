@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static com.google.code.inject.jaxrs.scope.CXFScopes.isRequestScoped;
+import static com.google.inject.Scopes.SINGLETON;
+
+import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+import org.apache.cxf.message.Message;
+
+import com.google.code.inject.jaxrs.util.BindingProvider;
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+import com.google.inject.spi.Dependency;
+import com.google.inject.spi.HasDependencies;
+import com.google.inject.spi.LinkedKeyBinding;
+
+/**
+ * Resource provider for singleton scoped resources.
+ * <p>
+ * The instance is retrieved once and reused for all exchanges. CXF will inject
+ * thread-local proxies for the <tt>@Context</tt> fields of the resource.
+ * Request scoped dependencies have to be injected via a <tt>Provider</tt>.
+ */
+class GuiceSingletonResourceProvider<T> implements ResourceProvider {
+
+	private final Provider<T> provider;
+	private final Class<?> actualType;
+	private volatile T instance;
+
+	protected GuiceSingletonResourceProvider(BindingProvider<T> binding,
+			Provider<T> provider, Injector injector) {
+		if (SINGLETON != binding.getScope())
+			throw new ProvisionException("Invalid scope " + binding.getScope()
+					+ " of " + binding.getKey());
+		verifyDependencies(injector, injector.getBinding(binding.getKey()));
+		this.actualType = binding.getActualType();
+		this.provider = provider;
+	}
+
+	private static void verifyDependencies(Injector injector,
+			Binding<?> binding) {
+		while (binding instanceof LinkedKeyBinding)
+			binding = injector.getBinding(((LinkedKeyBinding<?>) binding)
+					.getLinkedKey());
+
+		if (!(binding instanceof HasDependencies))
+			return;
+
+		for (final Dependency<?> dependency : ((HasDependencies) binding)
+				.getDependencies()) {
+			if (isRequestScoped(injector.getBinding(dependency.getKey())))
+				throw new ProvisionException("Singleton resource "
+						+ binding.getKey() + " depends on request scoped "
+						+ dependency.getKey() + ", inject a Provider instead");
+		}
+	}
+
+	@Override
+	public Object getInstance(Message m) {
+		T t = instance;
+		if (t == null) {
+			t = provider.get();
+			instance = t;
+		}
+		return t;
+	}
+
+	@Override
+	public void releaseInstance(Message m, Object o) {
+		// NOOP
+	}
+
+	@Override
+	public Class<?> getResourceClass() {
+		return actualType;
+	}
+
+	@Override
+	public boolean isSingleton() {
+		return true;
+	}
+
+}
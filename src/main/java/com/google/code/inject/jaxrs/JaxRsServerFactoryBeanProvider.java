@@ -17,24 +17,37 @@ package com.google.code.inject.jaxrs;
 
 import static com.google.code.inject.jaxrs.CXFServerModule.DIRECTION_IN;
 import static com.google.code.inject.jaxrs.CXFServerModule.DIRECTION_OUT;
+import static com.google.code.inject.jaxrs.CXFServerModule.FEATURES;
+import static com.google.code.inject.jaxrs.CXFServerModule.SERVER_BUS;
 import static com.google.code.inject.jaxrs.internal.DefaultInvoker.isDefault;
 import static org.apache.cxf.jaxrs.utils.ResourceUtils.isValidResourceClass;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.Provider;
 
+import org.apache.cxf.Bus;
+import org.apache.cxf.feature.AbstractFeature;
 import org.apache.cxf.interceptor.Interceptor;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.URITemplate;
 import org.apache.cxf.service.invoker.Invoker;
 
 import com.google.code.inject.jaxrs.CXFServerModule.ServerConfiguration;
+import com.google.code.inject.jaxrs.internal.IndexedServiceFactoryBean;
 import com.google.code.inject.jaxrs.internal.JaxRsProvider;
+import com.google.code.inject.jaxrs.metrics.AdminResource;
+import com.google.code.inject.jaxrs.scope.GuiceInterceptorFeature;
+import com.google.code.inject.jaxrs.scope.GuiceInterceptorWrapper;
+import com.google.code.inject.jaxrs.scope.MemoizingEntityReader;
 import com.google.inject.Inject;
 import com.google.inject.ProvisionException;
 import com.google.inject.name.Named;
@@ -69,7 +82,9 @@ class JaxRsServerFactoryBeanProvider implements
 			Set<ResourceProvider> resourceProviders,
 			@Named(DIRECTION_IN) Set<Interceptor<?>> inInterceptors,
 			@Named(DIRECTION_OUT) Set<Interceptor<?>> outInterceptors,
-			@JaxRsProvider Set<Object> providers, Invoker invoker) {
+			@JaxRsProvider Set<Object> providers,
+			@Named(FEATURES) Set<AbstractFeature> boundFeatures,
+			Invoker invoker) {
 
 		final Class<?>[] resourceClasses = new Class<?>[resourceProviders
 				.size()];
@@ -87,19 +102,46 @@ class JaxRsServerFactoryBeanProvider implements
 			map.put(c, rp);
 		}
 
-		bean = new JAXRSServerFactoryBean();
+		bean = new JAXRSServerFactoryBean(new IndexedServiceFactoryBean());
 		bean.setAddress(config.getAddress());
 		bean.setStaticSubresourceResolution(config.isStaticResourceResolution());
 
 		bean.setResourceClasses(resourceClasses);
+		if (config.getAdminPath() != null)
+			moveAdminResource(config.getAdminPath());
 		for (final Map.Entry<Class<?>, ResourceProvider> entry : map.entrySet()) {
 			bean.setResourceProvider(entry.getKey(), entry.getValue());
 		}
 
-		bean.setProviders(new ArrayList<Object>(providers));
+		final List<Interceptor<?>> in = new ArrayList<Interceptor<?>>();
+		final List<AbstractFeature> features = new ArrayList<AbstractFeature>();
+		for (final Interceptor<?> interceptor : inInterceptors) {
+			if (interceptor instanceof GuiceInterceptorWrapper)
+				features.add(new GuiceInterceptorFeature(
+						(GuiceInterceptorWrapper) interceptor));
+			else
+				in.add(interceptor);
+		}
+
+		features.addAll(boundFeatures);
+
+		if (!in.isEmpty())
+			bean.setInInterceptors(in);
 
-		if (!inInterceptors.isEmpty())
-			bean.setInInterceptors(new ArrayList<Interceptor<?>>(inInterceptors));
+		if (!features.isEmpty())
+			bean.setFeatures(features);
+
+		// readers go first so they are chosen over the readers they wrap
+		final List<Object> allProviders = new ArrayList<Object>();
+		if (config.isRequestEntityMemoized()) {
+			for (final Object provider : providers) {
+				if (provider instanceof MessageBodyReader)
+					allProviders.add(new MemoizingEntityReader(
+							(MessageBodyReader<?>) provider));
+			}
+		}
+		allProviders.addAll(providers);
+		bean.setProviders(allProviders);
 
 		if (!outInterceptors.isEmpty())
 			bean.setOutInterceptors(new ArrayList<Interceptor<?>>(
@@ -107,7 +149,25 @@ class JaxRsServerFactoryBeanProvider implements
 
 		if (!isDefault(invoker))
 			bean.setInvoker(invoker);
+		if (invoker instanceof MethodHandleInvoker)
+			((MethodHandleInvoker) invoker).prepare(bean.getServiceFactory()
+					.getClassResourceInfo());
+
+	}
+
+	/**
+	 * Bus shared by all endpoints, if bound
+	 */
+	@Inject(optional = true)
+	protected void setBus(@Named(SERVER_BUS) Bus bus) {
+		bean.setBus(bus);
+	}
 
+	private void moveAdminResource(String path) {
+		for (final ClassResourceInfo cri : bean.getServiceFactory()
+				.getClassResourceInfo())
+			if (cri.getServiceClass() == AdminResource.class)
+				cri.setURITemplate(new URITemplate(path));
 	}
 
 	@Override
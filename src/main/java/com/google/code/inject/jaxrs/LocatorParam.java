@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for passing arguments of an {@link Injected} sub-resource locator
+ * to the sub-resource.
+ * <p>
+ * On a sub-resource field it names the locator argument that will be assigned
+ * to it after the sub-resource was created. Locator arguments are named by
+ * their <tt>@PathParam</tt>, <tt>@QueryParam</tt> etc. annotation or, if
+ * present, by this annotation.
+ *
+ * <pre>
+ * &#064;Injected
+ * &#064;Path(&quot;{id}&quot;)
+ * public BookResource getBook(&#064;PathParam(&quot;id&quot;) long id) {
+ * 	throw new UnsupportedOperationException(&quot;will be implemented by Guice&quot;);
+ * }
+ *
+ * public class BookResource {
+ * 	&#064;LocatorParam(&quot;id&quot;)
+ * 	private long id;
+ * }
+ * </pre>
+ */
+@Target({ FIELD, PARAMETER })
+@Retention(RUNTIME)
+public @interface LocatorParam {
+
+	String value();
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static java.lang.invoke.MethodType.genericMethodType;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.jaxrs.JAXRSInvoker;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+import org.apache.cxf.message.Exchange;
+
+/**
+ * Invoker calling resource methods through method handles instead of
+ * <tt>Method.invoke</tt>.
+ * <p>
+ * A handle is built for every operation of the published resources, and of
+ * the sub-resources their locators declare, when the endpoint is built. Calls
+ * with up to four arguments don't go through an argument array. Methods
+ * that aren't public, that take the <tt>Exchange</tt> or that were not known
+ * when the endpoint was built are invoked reflectively, and so are calls with
+ * arguments that don't match the parameter types exactly.
+ * Exceptions thrown by resource methods are handled the same way as by the
+ * <tt>JAXRSInvoker</tt>. Bind it with:
+ *
+ * <pre>
+ * invokeVia(MethodHandleInvoker.class);
+ * </pre>
+ */
+public class MethodHandleInvoker extends JAXRSInvoker {
+
+	private static final class Invocation {
+		private final MethodHandle handle;
+		private final Class<?> target;
+		/** parameter types, primitives boxed */
+		private final Class<?>[] types;
+		private final boolean[] primitive;
+
+		Invocation(MethodHandle handle, Class<?> target, Class<?>[] types,
+				boolean[] primitive) {
+			this.handle = handle;
+			this.target = target;
+			this.types = types;
+			this.primitive = primitive;
+		}
+
+		/** would the handle take the arguments without converting them */
+		boolean fits(Object target, Object[] args) {
+			if (!this.target.isInstance(target) || args.length != types.length)
+				return false;
+			for (int i = 0; i < args.length; i++) {
+				final Object arg = args[i];
+				if (arg == null ? primitive[i] : !types[i].isInstance(arg))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private final static Logger logger = Logger
+			.getLogger(MethodHandleInvoker.class.getName());
+
+	/** largest arity invoked without spreading the arguments */
+	private static final int EXACT_ARITY = 4;
+
+	/**
+	 * Adapt a method to (target, args...) or (target, Object[])
+	 */
+	private static Invocation unreflect(Method m) throws IllegalAccessException {
+		final Class<?>[] types = m.getParameterTypes();
+		final boolean[] primitive = new boolean[types.length];
+		for (int i = 0; i < types.length; i++) {
+			primitive[i] = types[i].isPrimitive();
+			types[i] = methodType(types[i]).wrap().returnType();
+		}
+
+		MethodHandle handle = MethodHandles.publicLookup().unreflect(m)
+				.asType(genericMethodType(types.length + 1));
+		if (types.length > EXACT_ARITY)
+			handle = handle.asSpreader(Object[].class, types.length);
+		return new Invocation(handle, m.getDeclaringClass(), types, primitive);
+	}
+
+	private volatile Map<Method, Invocation> invocations = Collections
+			.emptyMap();
+
+	/**
+	 * Build handles for the operations of an endpoint's resources
+	 */
+	synchronized void prepare(Collection<ClassResourceInfo> resources) {
+		final Map<Method, Invocation> map = new HashMap<Method, Invocation>(
+				invocations);
+		final Set<Class<?>> visited = new HashSet<Class<?>>();
+		for (final ClassResourceInfo cri : resources)
+			prepare(cri, map, visited);
+		invocations = map;
+	}
+
+	private void prepare(ClassResourceInfo cri, Map<Method, Invocation> map,
+			Set<Class<?>> visited) {
+		if (!visited.add(cri.getServiceClass()))
+			return;
+
+		for (final OperationResourceInfo ori : cri.getMethodDispatcher()
+				.getOperationResourceInfos()) {
+			final Method m = ori.getMethodToInvoke();
+			if (!map.containsKey(m) && !Modifier.isStatic(m.getModifiers())
+					&& !Arrays.asList(m.getParameterTypes()).contains(
+							Exchange.class)) {
+				try {
+					map.put(m, unreflect(m));
+				} catch (final IllegalAccessException e) {
+					logger.log(Level.FINE, "Invoking " + m + " reflectively", e);
+				}
+			}
+
+			if (ori.isSubResourceLocator()) {
+				final Class<?> type = m.getReturnType();
+				if (!visited.contains(type) && type != Object.class)
+					prepare(ResourceUtils.createClassResourceInfo(type, type,
+							false, false), map, visited);
+			}
+		}
+
+		for (final ClassResourceInfo sub : cri.getSubResources())
+			prepare(sub, map, visited);
+	}
+
+	@Override
+	protected Object performInvocation(Exchange exchange,
+			Object serviceObject, Method m, Object[] paramArray)
+			throws Exception {
+		// arguments the handle would have to convert, or reject, are left
+		// to Method.invoke, so they fail the same way
+		final Invocation invocation = invocations.get(m);
+		if (invocation == null || !invocation.fits(serviceObject, paramArray))
+			return super.performInvocation(exchange, serviceObject, m,
+					paramArray);
+
+		final MethodHandle handle = invocation.handle;
+		final Object[] p = paramArray;
+		try {
+			switch (p.length) {
+			case 0:
+				return (Object) handle.invokeExact(serviceObject);
+			case 1:
+				return (Object) handle.invokeExact(serviceObject, p[0]);
+			case 2:
+				return (Object) handle.invokeExact(serviceObject, p[0], p[1]);
+			case 3:
+				return (Object) handle.invokeExact(serviceObject, p[0], p[1],
+						p[2]);
+			case 4:
+				return (Object) handle.invokeExact(serviceObject, p[0], p[1],
+						p[2], p[3]);
+			default:
+				return (Object) handle.invokeExact(serviceObject, p);
+			}
+		} catch (final Throwable t) {
+			// unwrapped into a fault like reflective invocation errors
+			throw new InvocationTargetException(t);
+		}
+	}
+
+}
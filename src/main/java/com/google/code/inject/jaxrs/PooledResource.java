@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+/**
+ * Lifecycle hook for pooled resources.
+ * <p>
+ * Resources published with <tt>publish(...).pooled(size)</tt> may implement
+ * this interface to clear per-request state before they are returned to the
+ * pool.
+ */
+public interface PooledResource {
+
+	/**
+	 * Called after the exchange completed, before the instance is returned
+	 * to the pool. If this method throws the instance is discarded.
+	 */
+	void reset();
+
+}
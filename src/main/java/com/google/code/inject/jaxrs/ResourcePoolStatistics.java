@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+/**
+ * Counters of a pooled resource provider.
+ * <p>
+ * The <tt>ResourceProvider</tt>s bound for pooled resources implement this
+ * interface.
+ */
+public interface ResourcePoolStatistics {
+
+	Class<?> getResourceClass();
+
+	/**
+	 * @return maximum number of live instances
+	 */
+	int getCapacity();
+
+	/**
+	 * @return number of instances currently waiting in the pool
+	 */
+	int getIdle();
+
+	/**
+	 * @return number of requests served with a pooled instance
+	 */
+	long getHits();
+
+	/**
+	 * @return number of requests that had to create a new instance
+	 */
+	long getMisses();
+
+	/**
+	 * @return number of requests that had to wait for an instance to be
+	 *         released
+	 */
+	long getWaits();
+
+	/**
+	 * @return number of requests that found the pool exhausted, or gave up
+	 *         waiting for an instance, and were served by an unpooled one
+	 */
+	long getTimeouts();
+
+}
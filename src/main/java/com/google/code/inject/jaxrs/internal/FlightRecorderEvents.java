@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import java.lang.reflect.Method;
+
+import org.apache.cxf.message.Exchange;
+
+import com.google.inject.Key;
+
+/**
+ * Java Flight Recorder events of the request lifecycle.
+ * <p>
+ * Each <tt>begin</tt> method returns an event handle to pass to the matching
+ * <tt>end</tt> method, or <tt>null</tt> if the event is not recorded. The
+ * <tt>end</tt> methods ignore <tt>null</tt> handles, so an event that is not
+ * recorded costs a check of its enablement and nothing is allocated. On JVMs
+ * without the <tt>jdk.jfr</tt> module no events are created at all.
+ * <p>
+ * The events are in the <tt>guice-cxf</tt> category and are recorded by
+ * any recording unless disabled in its settings, e.g.
+ * <tt>com.google.code.inject.jaxrs.Provision#enabled=false</tt>. The
+ * frequent <tt>Provision</tt> and <tt>Scope</tt> events have no stack trace
+ * and are only committed above a threshold of 1 ms and 10 ms, override it
+ * with e.g. <tt>com.google.code.inject.jaxrs.Scope#threshold=0 ms</tt>.
+ */
+public final class FlightRecorderEvents {
+
+	private static final boolean AVAILABLE = isAvailable();
+
+	private static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false,
+					FlightRecorderEvents.class.getClassLoader());
+			return JfrEvents.isAvailable();
+		} catch (final ClassNotFoundException e) {
+			return false;
+		} catch (final LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Resource invocation entering the request scope
+	 */
+	public static Object beginScope() {
+		return AVAILABLE ? JfrEvents.beginScope() : null;
+	}
+
+	/**
+	 * Resource invocation leaving the request scope
+	 *
+	 * @param exchange
+	 *            exchange of the scope, to record the invoked operation
+	 */
+	public static void endScope(Object event, Exchange exchange) {
+		if (event != null)
+			JfrEvents.endScope(event, exchange);
+	}
+
+	/**
+	 * Request scoped instance being created
+	 */
+	public static Object beginProvision() {
+		return AVAILABLE ? JfrEvents.beginProvision() : null;
+	}
+
+	/**
+	 * Request scoped instance created
+	 *
+	 * @param key
+	 *            key of the instance
+	 */
+	public static void endProvision(Object event, Key<?> key) {
+		if (event != null)
+			JfrEvents.endProvision(event, key);
+	}
+
+	/**
+	 * Per-request root resource being created
+	 */
+	public static Object beginResourceCreation() {
+		return AVAILABLE ? JfrEvents.beginResourceCreation() : null;
+	}
+
+	/**
+	 * Per-request root resource created
+	 *
+	 * @param resourceClass
+	 *            class of the resource
+	 */
+	public static void endResourceCreation(Object event,
+			Class<?> resourceClass) {
+		if (event != null)
+			JfrEvents.endResourceCreation(event, resourceClass);
+	}
+
+	/**
+	 * Sub-resource being created by a locator
+	 */
+	public static Object beginSubresourceCreation() {
+		return AVAILABLE ? JfrEvents.beginSubresourceCreation() : null;
+	}
+
+	/**
+	 * Sub-resource created
+	 *
+	 * @param locator
+	 *            locator method returning the sub-resource
+	 */
+	public static void endSubresourceCreation(Object event, Method locator) {
+		if (event != null)
+			JfrEvents.endSubresourceCreation(event, locator);
+	}
+
+	private FlightRecorderEvents() {
+	}
+
+}
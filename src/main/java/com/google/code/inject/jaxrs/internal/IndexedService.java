@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import static org.apache.cxf.jaxrs.utils.HttpUtils.getPathToMatch;
+import static org.apache.cxf.phase.PhaseInterceptorChain.getCurrentMessage;
+
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
+import org.apache.cxf.jaxrs.interceptor.JAXRSInInterceptor;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * Service giving resource selection only the root resources that may match
+ * the request path, see {@link ResourceIndex}.
+ * <p>
+ * The {@link JAXRSInInterceptor} reads the resources once per request and
+ * selects among them. The service installs an interceptor running just
+ * before it, so the candidates are returned to that read only; any other
+ * caller, e.g. a <tt>RequestHandler</tt> generating a WADL document, gets the
+ * full list. Metadata requests are answered by the request handlers before
+ * the resources are read for selection, so they are never indexed.
+ */
+final class IndexedService extends JAXRSServiceImpl {
+
+	private static final long serialVersionUID = 0;
+
+	/** Message key of the resource selection about to start */
+	private static final String SELECTING = IndexedService.class.getName()
+			+ ".selecting";
+
+	/** Exchange key set if the selection was given a single candidate */
+	private static final String SINGLE_CANDIDATE = IndexedService.class
+			.getName() + ".single";
+
+	/** Exchange key of the operation name, see {@link JAXRSInInterceptor} */
+	private static final String OPERATION_NAME = "org.apache.cxf.resource.operation.name";
+
+	/**
+	 * Marks the message so that the next read of the resources, the one of
+	 * the {@link JAXRSInInterceptor}, gets the candidates
+	 */
+	private static final class BeforeSelection extends
+			AbstractPhaseInterceptor<Message> {
+		BeforeSelection() {
+			super(Phase.UNMARSHAL);
+			addBefore(JAXRSInInterceptor.class.getName());
+		}
+
+		@Override
+		public void handleMessage(Message m) {
+			if (m.getExchange().get(OperationResourceInfo.class) == null
+					&& !isMetadataRequest(m))
+				m.put(SELECTING, Boolean.TRUE);
+		}
+
+		/**
+		 * @see org.apache.cxf.jaxrs.impl.RequestPreprocessor
+		 */
+		private static boolean isMetadataRequest(Message m) {
+			final String query = (String) m.get(Message.QUERY_STRING);
+			final String uri = (String) m.get(Message.REQUEST_URI);
+			return query != null && query.contains("_wadl") || uri != null
+					&& uri.endsWith(".xsd");
+		}
+	}
+
+	/**
+	 * Names the operation after all the resources rather than the
+	 * candidates, the {@link JAXRSInInterceptor} includes the class name
+	 * only if it selected among several resources
+	 */
+	private static final class AfterSelection extends
+			AbstractPhaseInterceptor<Message> {
+		AfterSelection() {
+			super(Phase.UNMARSHAL);
+			addAfter(JAXRSInInterceptor.class.getName());
+		}
+
+		@Override
+		public void handleMessage(Message m) {
+			m.remove(SELECTING);
+			final Exchange exchange = m.getExchange();
+			if (exchange.remove(SINGLE_CANDIDATE) == null)
+				return;
+			final OperationResourceInfo ori = exchange
+					.get(OperationResourceInfo.class);
+			if (ori != null)
+				exchange.put(OPERATION_NAME, ori.getClassResourceInfo()
+						.getServiceClass().getSimpleName()
+						+ "#" + ori.getMethodToInvoke().getName());
+		}
+	}
+
+	private final transient ResourceIndex index;
+
+	IndexedService(List<ClassResourceInfo> cris, QName name) {
+		super(cris, name);
+		this.index = new ResourceIndex(super.getClassResourceInfos());
+		getInInterceptors().add(new BeforeSelection());
+		getInInterceptors().add(new AfterSelection());
+	}
+
+	@Override
+	public List<ClassResourceInfo> getClassResourceInfos() {
+		final List<ClassResourceInfo> all = super.getClassResourceInfos();
+		final Message m = getCurrentMessage();
+		if (m == null || m.remove(SELECTING) == null)
+			return all;
+
+		final Exchange exchange = m.getExchange();
+		if (exchange.getInMessage() != m
+				|| exchange.get(OperationResourceInfo.class) != null)
+			return all;
+
+		final List<ClassResourceInfo> candidates = index
+				.candidates(getPathToMatch(m, true));
+		if (candidates.size() == 1 && all.size() > 1)
+			exchange.put(SINGLE_CANDIDATE, Boolean.TRUE);
+		return candidates;
+	}
+
+}
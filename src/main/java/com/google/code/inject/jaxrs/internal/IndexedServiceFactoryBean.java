@@ -0,0 +1,37 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import org.apache.cxf.jaxrs.JAXRSServiceFactoryBean;
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
+
+/**
+ * Creates an {@link IndexedService}, so matching a request doesn't try the
+ * path of every root resource in turn.
+ */
+public class IndexedServiceFactoryBean extends JAXRSServiceFactoryBean {
+
+	@Override
+	protected void initializeServiceModel() {
+		super.initializeServiceModel();
+		final JAXRSServiceImpl service = (JAXRSServiceImpl) getService();
+		final IndexedService indexed = new IndexedService(
+				service.getClassResourceInfos(), service.getName());
+		indexed.putAll(service);
+		setService(indexed);
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import java.lang.reflect.Method;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+
+import com.google.inject.Key;
+
+/**
+ * Creates the Flight Recorder events. Only loaded by
+ * {@link FlightRecorderEvents} when the <tt>jdk.jfr</tt> module is present.
+ */
+final class JfrEvents {
+
+	// checked before an event is allocated
+	private static final EventType SCOPE = EventType
+			.getEventType(ScopeEvent.class);
+	private static final EventType PROVISION = EventType
+			.getEventType(ProvisionEvent.class);
+	private static final EventType RESOURCE_CREATION = EventType
+			.getEventType(ResourceCreationEvent.class);
+	private static final EventType SUBRESOURCE_CREATION = EventType
+			.getEventType(SubresourceCreationEvent.class);
+
+	static boolean isAvailable() {
+		return FlightRecorder.isAvailable();
+	}
+
+	private static <E extends Event> E begin(E event) {
+		event.begin();
+		return event;
+	}
+
+	static Object beginScope() {
+		return SCOPE.isEnabled() ? begin(new ScopeEvent()) : null;
+	}
+
+	static void endScope(Object e, Exchange exchange) {
+		final ScopeEvent event = (ScopeEvent) e;
+		event.end();
+		if (!event.shouldCommit())
+			return;
+		final OperationResourceInfo ori = exchange
+				.get(OperationResourceInfo.class);
+		if (ori != null) {
+			event.resourceClass = ori.getClassResourceInfo().getServiceClass();
+			event.method = ori.getMethodToInvoke().getName();
+		}
+		event.commit();
+	}
+
+	static Object beginProvision() {
+		return PROVISION.isEnabled() ? begin(new ProvisionEvent()) : null;
+	}
+
+	static void endProvision(Object e, Key<?> key) {
+		final ProvisionEvent event = (ProvisionEvent) e;
+		event.end();
+		// below the threshold the key isn't formatted
+		if (!event.shouldCommit())
+			return;
+		event.key = key.toString();
+		event.commit();
+	}
+
+	static Object beginResourceCreation() {
+		return RESOURCE_CREATION.isEnabled() ? begin(new ResourceCreationEvent())
+				: null;
+	}
+
+	static void endResourceCreation(Object e, Class<?> resourceClass) {
+		final ResourceCreationEvent event = (ResourceCreationEvent) e;
+		event.resourceClass = resourceClass;
+		event.commit();
+	}
+
+	static Object beginSubresourceCreation() {
+		return SUBRESOURCE_CREATION.isEnabled() ? begin(new SubresourceCreationEvent())
+				: null;
+	}
+
+	static void endSubresourceCreation(Object e, Method locator) {
+		final SubresourceCreationEvent event = (SubresourceCreationEvent) e;
+		event.subresourceClass = locator.getReturnType();
+		event.locator = locator.getDeclaringClass().getName() + "."
+				+ locator.getName();
+		event.commit();
+	}
+
+	private JfrEvents() {
+	}
+
+}
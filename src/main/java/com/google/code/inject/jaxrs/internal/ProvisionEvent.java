@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Creation of a request scoped instance, including its request scoped dependencies
+ */
+@Name("com.google.code.inject.jaxrs.Provision")
+@Label("Request Scoped Provision")
+@Category("guice-cxf")
+@StackTrace(false)
+@Threshold("1 ms")
+@Description("Creation of a request scoped instance, including its request scoped dependencies")
+final class ProvisionEvent extends Event {
+
+	@Label("Key")
+	@Description("Key of the created instance")
+	String key;
+
+}
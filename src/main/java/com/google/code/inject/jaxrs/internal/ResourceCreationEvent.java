@@ -0,0 +1,37 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Creation of a per-request root resource
+ */
+@Name("com.google.code.inject.jaxrs.ResourceCreation")
+@Label("Resource Creation")
+@Category("guice-cxf")
+@Description("Creation of a per-request root resource")
+final class ResourceCreationEvent extends Event {
+
+	@Label("Resource Class")
+	@Description("Created resource class")
+	Class<?> resourceClass;
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.URITemplate;
+
+/**
+ * Trie of the literal path segments of root resources.
+ * <p>
+ * Each resource is stored at the node of the leading literal segments of its
+ * <tt>&#064;Path</tt>, up to the first template variable. Walking a request
+ * path collects the resources stored along the way, a superset of the
+ * resources whose path can match. The trie is not modified once built, so
+ * lookups don't lock.
+ */
+final class ResourceIndex {
+
+	private static final class Node {
+		final Map<String, Node> children = new HashMap<String, Node>();
+		final BitSet resources = new BitSet();
+
+		Node child(String segment) {
+			Node child = children.get(segment);
+			if (child == null) {
+				child = new Node();
+				children.put(segment, child);
+			}
+			return child;
+		}
+	}
+
+	/**
+	 * @return true if the segment is matched literally and can't appear
+	 *         percent-encoded in a request
+	 */
+	private static boolean isLiteral(String segment) {
+		for (int i = 0; i < segment.length(); i++) {
+			final char c = segment.charAt(i);
+			if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0'
+					&& c <= '9' || c == '-' || c == '.' || c == '_' || c == '~'))
+				return false;
+		}
+		return true;
+	}
+
+	private final List<ClassResourceInfo> resources;
+	private final Node root = new Node();
+
+	ResourceIndex(List<ClassResourceInfo> resources) {
+		this.resources = resources;
+		for (int i = 0; i < resources.size(); i++) {
+			final URITemplate template = resources.get(i).getURITemplate();
+			Node node = root;
+			if (template != null) {
+				for (final String segment : template.getValue().split("/")) {
+					if (segment.length() == 0)
+						continue;
+					if (!isLiteral(segment))
+						break;
+					node = node.child(segment);
+				}
+			}
+			node.resources.set(i);
+		}
+	}
+
+	/**
+	 * @param path
+	 *            raw request path, relative to the server address
+	 * @return resources that may match the path, in declaration order
+	 */
+	List<ClassResourceInfo> candidates(String path) {
+		// can't compare encoded segments or ones with matrix parameters
+		if (path.indexOf('%') >= 0 || path.indexOf(';') >= 0)
+			return resources;
+
+		final BitSet found = (BitSet) root.resources.clone();
+		Node node = root;
+		for (final String segment : path.split("/")) {
+			if (segment.length() == 0)
+				continue;
+			node = node.children.get(segment);
+			if (node == null)
+				break;
+			found.or(node.resources);
+		}
+
+		if (found.cardinality() == resources.size())
+			return resources;
+
+		final List<ClassResourceInfo> candidates = new ArrayList<ClassResourceInfo>(
+				found.cardinality());
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+			candidates.add(resources.get(i));
+		return Collections.unmodifiableList(candidates);
+	}
+
+}
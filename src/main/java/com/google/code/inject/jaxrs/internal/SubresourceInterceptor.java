@@ -15,20 +15,220 @@
  */
 package com.google.code.inject.jaxrs.internal;
 
+import static com.google.code.inject.jaxrs.util.BindingProvider.resolveBinding;
+import static com.google.inject.Scopes.NO_SCOPE;
+import static java.lang.invoke.MethodType.methodType;
+import static java.lang.reflect.Modifier.isFinal;
+import static java.lang.reflect.Modifier.isStatic;
+import static org.apache.cxf.jaxrs.utils.AnnotationUtils.getAnnotatedMethod;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.CookieParam;
+import javax.ws.rs.FormParam;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.MatrixParam;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 
+import com.google.code.inject.jaxrs.LocatorParam;
+import com.google.code.inject.jaxrs.util.BindingProvider;
+import com.google.inject.Binding;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+import com.google.inject.Scope;
 
 public class SubresourceInterceptor implements MethodInterceptor {
 
+	/**
+	 * Creates sub-resources for a locator method, resolved on first use
+	 */
+	private static final class SubresourceFactory {
+		private final Provider<?> provider;
+		/** locator argument index for each setter */
+		private final int[] arguments;
+		private final Field[] fields;
+		private final MethodHandle[] setters;
+
+		SubresourceFactory(Provider<?> provider, int[] arguments,
+				Field[] fields, MethodHandle[] setters) {
+			this.provider = provider;
+			this.arguments = arguments;
+			this.fields = fields;
+			this.setters = setters;
+		}
+
+		Object create(Object[] args) throws Throwable {
+			final Object subresource = provider.get();
+			for (int i = 0; i < setters.length; i++) {
+				final Object arg = args[arguments[i]];
+				if (arg == null && fields[i].getType().isPrimitive())
+					throw new ProvisionException("Locator parameter '"
+							+ fields[i].getAnnotation(LocatorParam.class)
+									.value() + "' is null, but " + fields[i]
+							+ " is primitive");
+				setters[i].invokeExact(subresource, arg);
+			}
+			return subresource;
+		}
+	}
+
+	private static String nameOf(Annotation[] annotations) {
+		String name = null;
+		for (final Annotation a : annotations) {
+			if (a instanceof LocatorParam)
+				return ((LocatorParam) a).value();
+			else if (a instanceof PathParam)
+				name = ((PathParam) a).value();
+			else if (a instanceof QueryParam)
+				name = ((QueryParam) a).value();
+			else if (a instanceof MatrixParam)
+				name = ((MatrixParam) a).value();
+			else if (a instanceof HeaderParam)
+				name = ((HeaderParam) a).value();
+			else if (a instanceof CookieParam)
+				name = ((CookieParam) a).value();
+			else if (a instanceof FormParam)
+				name = ((FormParam) a).value();
+		}
+		return name;
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		return methodType(type).wrap().returnType();
+	}
+
 	private Injector injector;
 
+	/** Sub-resource factories resolved for each locator method */
+	private final ConcurrentMap<Method, SubresourceFactory> factories = new ConcurrentHashMap<Method, SubresourceFactory>();
+
 	@Override
-	public Object invoke(MethodInvocation method) throws Throwable {
-		final Class<?> rt = method.getMethod().getReturnType();
-		return injector.getInstance(rt);
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		final Method method = invocation.getMethod();
+		SubresourceFactory factory = factories.get(method);
+		if (factory == null) {
+			factory = resolve(method);
+			factories.putIfAbsent(method, factory);
+		}
+		final Object event = FlightRecorderEvents.beginSubresourceCreation();
+		final Object subresource = factory.create(invocation.getArguments());
+		FlightRecorderEvents.endSubresourceCreation(event, method);
+		return subresource;
+	}
+
+	/**
+	 * Locator parameters are written to the fields of a new instance, a scoped
+	 * one could be shared with other exchanges or locators.
+	 */
+	private void checkUnscoped(BindingProvider<?> binding, Class<?> rt,
+			Method method) {
+		checkUnscoped(binding.getScope(), rt, method);
+
+		final Class<?> actualType = binding.getActualType();
+		if (actualType != rt) {
+			final Binding<?> linked = injector.getExistingBinding(Key
+					.get(actualType));
+			if (linked != null)
+				checkUnscoped(resolveBinding(injector, linked.getKey())
+						.getScope(), actualType, method);
+		}
+	}
+
+	private static void checkUnscoped(Scope scope, Class<?> type,
+			Method method) {
+		if (NO_SCOPE != scope)
+			throw new ProvisionException("Invalid scope " + scope + " of "
+					+ type + " returned by " + method
+					+ ", sub-resources with locator parameters"
+					+ " must be unscoped");
+	}
+
+	private SubresourceFactory resolve(Method method) {
+		final Class<?> rt = method.getReturnType();
+		final BindingProvider<?> binding = resolveBinding(injector,
+				Key.get(rt));
+		final Class<?> actualType = binding.getActualType();
+
+		final Method annotated = getAnnotatedMethod(method);
+		final Annotation[][] parameterAnnotations = annotated
+				.getParameterAnnotations();
+		final Class<?>[] parameterTypes = method.getParameterTypes();
+
+		final List<Integer> arguments = new ArrayList<Integer>();
+		final List<Field> fields = new ArrayList<Field>();
+		final List<MethodHandle> setters = new ArrayList<MethodHandle>();
+		for (Class<?> c = actualType; c != null && c != Object.class; c = c
+				.getSuperclass()) {
+			for (final Field field : c.getDeclaredFields()) {
+				final LocatorParam param = field
+						.getAnnotation(LocatorParam.class);
+				if (param == null)
+					continue;
+
+				final int index = indexOf(param.value(), parameterAnnotations);
+				if (index < 0)
+					throw new ProvisionException("Locator " + method
+							+ " has no parameter named '" + param.value()
+							+ "' required by " + field);
+
+				final int mod = field.getModifiers();
+				if (isStatic(mod) || isFinal(mod))
+					throw new ProvisionException("Field " + field
+							+ " must not be static or final");
+
+				if (!wrap(field.getType()).isAssignableFrom(
+						wrap(parameterTypes[index])))
+					throw new ProvisionException("Locator parameter '"
+							+ param.value() + "' of " + method
+							+ " is not assignable to " + field);
+
+				field.setAccessible(true);
+				try {
+					setters.add(MethodHandles.lookup().unreflectSetter(field)
+							.asType(methodType(void.class, Object.class,
+									Object.class)));
+				} catch (final IllegalAccessException e) {
+					throw new ProvisionException("Unable to access " + field,
+							e);
+				}
+				arguments.add(index);
+				fields.add(field);
+			}
+		}
+
+		if (!fields.isEmpty())
+			checkUnscoped(binding, rt, method);
+
+		final int[] indexes = new int[arguments.size()];
+		for (int i = 0; i < indexes.length; i++)
+			indexes[i] = arguments.get(i);
+
+		return new SubresourceFactory(injector.getProvider(rt), indexes,
+				fields.toArray(new Field[fields.size()]),
+				setters.toArray(new MethodHandle[setters.size()]));
+	}
+
+	private static int indexOf(String name, Annotation[][] parameterAnnotations) {
+		for (int i = 0; i < parameterAnnotations.length; i++) {
+			if (name.equals(nameOf(parameterAnnotations[i])))
+				return i;
+		}
+		return -1;
 	}
 
 	@Inject
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+
+/**
+ * Provides a virtual-thread-per-task executor.
+ * <p>
+ * guice-cxf is built for Java 11, so the executor is looked up reflectively
+ * and provisioning fails when running on anything older than Java 21.
+ * Invocations on virtual threads carry the request scope in the same
+ * <tt>ThreadLocal</tt> as invocations on any other executor; a
+ * <tt>ScopedValue</tt> based scope is not supported, the API is only final
+ * from Java 25.
+ */
+public final class VirtualThreadExecutorProvider implements Provider<Executor> {
+
+	@Override
+	public Executor get() {
+		try {
+			return (Executor) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (final NoSuchMethodException e) {
+			throw new ProvisionException(
+					"Virtual threads require Java 21 or newer", e);
+		} catch (final Exception e) {
+			throw new ProvisionException(
+					"Unable to create virtual thread executor", e);
+		}
+	}
+
+}
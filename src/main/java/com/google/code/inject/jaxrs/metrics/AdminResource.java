@@ -0,0 +1,370 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static com.google.code.inject.jaxrs.metrics.PrometheusWriter.label;
+import static org.apache.cxf.phase.PhaseInterceptorChain.getCurrentMessage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.jaxrs.JAXRSServiceImpl;
+import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.phase.PhaseInterceptor;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.phase.PhaseManager;
+import org.apache.cxf.service.Service;
+
+import com.google.code.inject.jaxrs.ResourcePoolStatistics;
+import com.google.code.inject.jaxrs.internal.JaxRsProvider;
+import com.google.code.inject.jaxrs.scope.AllocationMetrics;
+import com.google.code.inject.jaxrs.scope.OperationAllocationStatistics;
+import com.google.code.inject.jaxrs.scope.RequestScopeKeyStatistics;
+import com.google.code.inject.jaxrs.scope.RequestScopeMetrics;
+import com.google.code.inject.jaxrs.scope.RequestScopeStatistics;
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Singleton;
+
+/**
+ * Admin resource published by <tt>serve().withAdminEndpoint(path)</tt>.
+ * <p>
+ * <tt>GET {path}/metrics</tt> returns the metrics enabled on the server
+ * module in the Prometheus text format: latency histograms, phase tracing,
+ * request scope and allocation metrics and resource pool statistics. Metrics
+ * that weren't enabled are left out. All metric names start with
+ * <tt>guice_cxf_</tt>, e.g. <tt>guice_cxf_request_duration_seconds</tt> or
+ * <tt>guice_cxf_resource_pool_timeouts_total</tt>.
+ * <p>
+ * <tt>GET {path}/config</tt> returns a JSON description of the published
+ * resources, the JAX-RS providers and the in and out interceptor chains.
+ * <p>
+ * The class level path is replaced with the one given to
+ * <tt>withAdminEndpoint</tt>. The resource is served like any other resource
+ * of the server, without access control of its own. Both of its views reveal
+ * implementation details, class names in particular, so protect the path
+ * with the security of the container or a filter, or publish it on a
+ * separate server that is not reachable by clients.
+ */
+@Singleton
+@Path("/_admin")
+public class AdminResource {
+
+	private static final double NANOS = 1e9;
+	private static final double MICROS = 1e6;
+
+	private final Injector injector;
+	private final Set<ResourceProvider> resourceProviders;
+	private final Set<Object> providers;
+
+	@Inject
+	public AdminResource(Injector injector,
+			Set<ResourceProvider> resourceProviders,
+			@JaxRsProvider Set<Object> providers) {
+		this.injector = injector;
+		this.resourceProviders = resourceProviders;
+		this.providers = providers;
+	}
+
+	private <T> T getBound(Class<T> type) {
+		final Binding<T> binding = injector.getExistingBinding(Key.get(type));
+		return (binding != null) ? binding.getProvider().get() : null;
+	}
+
+	@GET
+	@Path("metrics")
+	@Produces(PrometheusWriter.CONTENT_TYPE)
+	public String metrics() {
+		final PrometheusWriter out = new PrometheusWriter();
+
+		final LatencyMetrics latency = getBound(LatencyMetrics.class);
+		if (latency != null)
+			writeLatency(out, latency.snapshot());
+
+		final PhaseTracing tracing = getBound(PhaseTracing.class);
+		if (tracing != null)
+			writeTracing(out, tracing);
+
+		final RequestScopeMetrics scope = getBound(RequestScopeMetrics.class);
+		if (scope != null)
+			writeScope(out, scope);
+
+		final AllocationMetrics allocations = getBound(AllocationMetrics.class);
+		if (allocations != null)
+			writeAllocations(out, allocations.getOperationStatistics());
+
+		writePools(out);
+
+		return out.toString();
+	}
+
+	private static void writeLatency(PrometheusWriter out,
+			List<OperationLatencySnapshot> operations) {
+		out.family("request_duration_seconds", "summary",
+				"Server-side latency of resource methods");
+		for (final OperationLatencySnapshot o : operations)
+			out.summary("request_duration_seconds",
+					label("operation", o.getOperation()), o.getLatency(),
+					NANOS);
+
+		out.family("responses_total", "counter",
+				"Responses by status class");
+		for (final OperationLatencySnapshot o : operations)
+			for (int statusClass = 1; statusClass <= 5; statusClass++)
+				out.sample("responses_total",
+						label("operation", o.getOperation()) + ","
+								+ label("status", statusClass + "xx"),
+						o.getResponses(statusClass));
+
+		out.family("request_body_bytes_total", "counter",
+				"Bytes read from request bodies");
+		for (final OperationLatencySnapshot o : operations)
+			out.sample("request_body_bytes_total",
+					label("operation", o.getOperation()), o.getBytesIn());
+
+		out.family("response_body_bytes_total", "counter",
+				"Bytes written to response bodies");
+		for (final OperationLatencySnapshot o : operations)
+			out.sample("response_body_bytes_total",
+					label("operation", o.getOperation()), o.getBytesOut());
+	}
+
+	private static void writeTracing(PrometheusWriter out,
+			PhaseTracing tracing) {
+		out.family("phase_duration_seconds", "summary",
+				"Time per traced request spent in an interceptor chain phase");
+		for (final Map.Entry<String, HistogramSnapshot> e : tracing
+				.getPhaseTimings().entrySet()) {
+			final String phase = e.getKey();
+			final int colon = phase.indexOf(':');
+			out.summary("phase_duration_seconds",
+					label("chain", phase.substring(0, colon)) + ","
+							+ label("phase", phase.substring(colon + 1)),
+					e.getValue(), NANOS);
+		}
+
+		out.family("interceptor_duration_seconds", "summary",
+				"Time per run of an interceptor in traced requests");
+		for (final Map.Entry<String, HistogramSnapshot> e : tracing
+				.getInterceptorTimings().entrySet())
+			out.summary("interceptor_duration_seconds",
+					label("interceptor", e.getKey()), e.getValue(), NANOS);
+	}
+
+	private static void writeScope(PrometheusWriter out,
+			RequestScopeMetrics scope) {
+		final RequestScopeStatistics requests = scope.getRequestStatistics();
+		out.family("request_scope_requests_total", "counter",
+				"Requests that completed in the request scope").sample(
+				"request_scope_requests_total", "", requests.getRequests());
+		out.family("request_scope_objects_created_total", "counter",
+				"Request scoped objects created").sample(
+				"request_scope_objects_created_total", "",
+				requests.getObjectsCreated());
+		out.family("request_scope_provisioning_seconds_total", "counter",
+				"Time spent creating request scoped objects").sample(
+				"request_scope_provisioning_seconds_total", "",
+				requests.getTotalProvisioningTime() / MICROS);
+
+		final Collection<RequestScopeKeyStatistics> keys = scope
+				.getKeyStatistics();
+		out.family("request_scope_provisions_total", "counter",
+				"Request scoped objects created, by key");
+		for (final RequestScopeKeyStatistics k : keys)
+			out.sample("request_scope_provisions_total",
+					label("key", k.getKey()), k.getProvisions());
+		out.family("request_scope_hits_total", "counter",
+				"Request scoped objects found in the scope, by key");
+		for (final RequestScopeKeyStatistics k : keys)
+			out.sample("request_scope_hits_total", label("key", k.getKey()),
+					k.getHits());
+		out.family("request_scope_creation_seconds_total", "counter",
+				"Time spent creating request scoped objects, by key");
+		for (final RequestScopeKeyStatistics k : keys)
+			out.sample("request_scope_creation_seconds_total",
+					label("key", k.getKey()), k.getTotalCreationTime()
+							/ MICROS);
+	}
+
+	private static void writeAllocations(PrometheusWriter out,
+			Collection<OperationAllocationStatistics> operations) {
+		out.family("allocated_bytes", "summary",
+				"Bytes allocated by sampled resource invocations");
+		for (final OperationAllocationStatistics o : operations) {
+			final String labels = label("operation", o.getOperation());
+			out.sample("allocated_bytes", labels + ",quantile=\"0.5\"",
+					o.getBytes50thPercentile());
+			out.sample("allocated_bytes", labels + ",quantile=\"0.95\"",
+					o.getBytes95thPercentile());
+			out.sample("allocated_bytes", labels + ",quantile=\"0.99\"",
+					o.getBytes99thPercentile());
+			out.sample("allocated_bytes_sum", labels, o.getTotalBytes());
+			out.sample("allocated_bytes_count", labels, o.getSamples());
+		}
+	}
+
+	private void writePools(PrometheusWriter out) {
+		boolean any = false;
+		for (final ResourceProvider rp : resourceProviders)
+			any |= rp instanceof ResourcePoolStatistics;
+		if (!any)
+			return;
+
+		final String[][] families = {
+				{ "resource_pool_capacity", "gauge",
+						"Maximum number of live pooled instances" },
+				{ "resource_pool_idle", "gauge",
+						"Instances waiting in the pool" },
+				{ "resource_pool_hits_total", "counter",
+						"Requests served with a pooled instance" },
+				{ "resource_pool_misses_total", "counter",
+						"Requests that created a new instance" },
+				{ "resource_pool_waits_total", "counter",
+						"Requests that waited for an instance" },
+				{ "resource_pool_timeouts_total", "counter",
+						"Requests served unpooled after waiting" } };
+		for (int i = 0; i < families.length; i++) {
+			out.family(families[i][0], families[i][1], families[i][2]);
+			for (final ResourceProvider rp : resourceProviders) {
+				if (!(rp instanceof ResourcePoolStatistics))
+					continue;
+				final ResourcePoolStatistics pool = (ResourcePoolStatistics) rp;
+				final long[] values = { pool.getCapacity(), pool.getIdle(),
+						pool.getHits(), pool.getMisses(), pool.getWaits(),
+						pool.getTimeouts() };
+				out.sample(families[i][0], label("resource", pool
+						.getResourceClass().getName()), values[i]);
+			}
+		}
+	}
+
+	@GET
+	@Path("config")
+	@Produces(MediaType.APPLICATION_JSON)
+	public String configuration() {
+		final Exchange exchange = getCurrentMessage().getExchange();
+		final StringBuilder sb = new StringBuilder("{\"resources\":[");
+
+		final Service service = exchange.get(Service.class);
+		if (service instanceof JAXRSServiceImpl) {
+			String sep = "";
+			for (final ClassResourceInfo cri : ((JAXRSServiceImpl) service)
+					.getClassResourceInfos()) {
+				sb.append(sep).append("{\"class\":")
+						.append(quote(cri.getServiceClass().getName()))
+						.append(",\"path\":")
+						.append(quote(cri.getURITemplate().getValue()))
+						.append(",\"provider\":")
+						.append(quote(cri.getResourceProvider().getClass()
+								.getName())).append(",\"operations\":[");
+				String opSep = "";
+				for (final OperationResourceInfo ori : cri
+						.getMethodDispatcher().getOperationResourceInfos()) {
+					sb.append(opSep).append("{\"method\":")
+							.append(quote(ori.getHttpMethod()))
+							.append(",\"path\":")
+							.append(quote(ori.getURITemplate().getValue()))
+							.append(",\"invokes\":")
+							.append(quote(ori.getMethodToInvoke().getName()))
+							.append('}');
+					opSep = ",";
+				}
+				sb.append("]}");
+				sep = ",";
+			}
+		}
+
+		sb.append("],\"providers\":[");
+		String sep = "";
+		for (final Object provider : providers) {
+			sb.append(sep).append(quote(provider.getClass().getName()));
+			sep = ",";
+		}
+
+		final Bus bus = exchange.get(Bus.class);
+		final Endpoint endpoint = exchange.get(Endpoint.class);
+		final PhaseManager phases = bus.getExtension(PhaseManager.class);
+		final PhaseInterceptorChain in = new PhaseInterceptorChain(
+				phases.getInPhases());
+		in.add(bus.getInInterceptors());
+		in.add(endpoint.getService().getInInterceptors());
+		in.add(endpoint.getInInterceptors());
+		in.add(endpoint.getBinding().getInInterceptors());
+		sb.append("],\"in\":");
+		appendChain(sb, in);
+
+		final PhaseInterceptorChain out = new PhaseInterceptorChain(
+				phases.getOutPhases());
+		out.add(bus.getOutInterceptors());
+		out.add(endpoint.getService().getOutInterceptors());
+		out.add(endpoint.getOutInterceptors());
+		out.add(endpoint.getBinding().getOutInterceptors());
+		sb.append(",\"out\":");
+		appendChain(sb, out);
+
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * Interceptors in the order they would run, without the ones added while
+	 * a message is processed
+	 */
+	private static void appendChain(StringBuilder sb,
+			PhaseInterceptorChain chain) {
+		sb.append('[');
+		String sep = "";
+		for (final Interceptor<?> i : chain) {
+			sb.append(sep).append("{\"phase\":")
+					.append(quote((i instanceof PhaseInterceptor) ? ((PhaseInterceptor<?>) i)
+							.getPhase() : null)).append(",\"interceptor\":")
+					.append(quote(i.getClass().getName())).append('}');
+			sep = ",";
+		}
+		sb.append(']');
+	}
+
+	private static String quote(String s) {
+		if (s == null)
+			return "null";
+		final StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+}
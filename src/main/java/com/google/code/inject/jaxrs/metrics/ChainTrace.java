@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interceptors run for a traced request and the time each of them took.
+ * <p>
+ * An interceptor's time runs from the marker placed before it until the next
+ * marker, so an interceptor that runs another chain, like the outgoing chain
+ * interceptor, is only charged for its own work.
+ */
+final class ChainTrace {
+
+	/** Interceptor run */
+	static final class Segment {
+		final String chain;
+		final String phase;
+		final String interceptor;
+		final long nanos;
+
+		Segment(String chain, String phase, String interceptor, long nanos) {
+			this.chain = chain;
+			this.phase = phase;
+			this.interceptor = interceptor;
+			this.nanos = nanos;
+		}
+	}
+
+	final long start = System.nanoTime();
+	final List<Segment> segments = new ArrayList<Segment>();
+
+	private long last;
+	private String chain;
+	private String phase;
+	private String interceptor;
+	private boolean finished;
+
+	/**
+	 * An interceptor is about to run
+	 */
+	void enter(String chain, String phase, String interceptor) {
+		final long now = System.nanoTime();
+		close(now);
+		this.chain = chain;
+		this.phase = phase;
+		this.interceptor = interceptor;
+		this.last = now;
+	}
+
+	/**
+	 * The last interceptor of a chain completed
+	 */
+	void exit() {
+		close(System.nanoTime());
+	}
+
+	/**
+	 * @return total time of the request, or -1 if it was already finished
+	 */
+	long finish() {
+		if (finished)
+			return -1;
+		finished = true;
+		final long now = System.nanoTime();
+		close(now);
+		return now - start;
+	}
+
+	boolean isFinished() {
+		return finished;
+	}
+
+	private void close(long now) {
+		if (interceptor != null)
+			segments.add(new Segment(chain, phase, interceptor, now - last));
+		interceptor = null;
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+/**
+ * Immutable copy of the buckets of a {@link Histogram}
+ */
+public final class HistogramSnapshot {
+
+	private final long[] counts;
+	private final long count;
+	private final long sum;
+	private final long max;
+
+	HistogramSnapshot(long[] counts, long count, long sum, long max) {
+		this.counts = counts;
+		this.count = count;
+		this.sum = sum;
+		this.max = max;
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return sum of recorded values
+	 */
+	public long getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return largest recorded value
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return mean of recorded values, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		return (count == 0) ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * @param quantile
+	 *            quantile between 0 and 1, e.g. 0.99
+	 * @return upper bound of the bucket holding the quantile, 0 if nothing
+	 *         was recorded
+	 */
+	public long getPercentile(double quantile) {
+		long total = 0;
+		for (final long c : counts)
+			total += c;
+		if (total == 0)
+			return 0;
+
+		final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(Histogram.upperBoundOf(i), max);
+		}
+		return max;
+	}
+
+	/**
+	 * @return number of values recorded in each bucket, by bucket upper
+	 *         bound; empty buckets are skipped
+	 */
+	public long[][] getBuckets() {
+		int used = 0;
+		for (final long c : counts)
+			if (c != 0)
+				used++;
+		final long[][] buckets = new long[used][];
+		for (int i = 0, j = 0; i < counts.length; i++)
+			if (counts[i] != 0)
+				buckets[j++] = new long[] { Histogram.upperBoundOf(i),
+						counts[i] };
+		return buckets;
+	}
+
+}
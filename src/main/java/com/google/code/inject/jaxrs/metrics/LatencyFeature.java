@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static org.apache.cxf.phase.Phase.PRE_STREAM;
+import static org.apache.cxf.phase.Phase.RECEIVE;
+import static org.apache.cxf.phase.Phase.SEND_ENDING;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+
+import com.google.inject.Inject;
+
+/**
+ * Installs the interceptors recording {@link LatencyMetrics}.
+ * <p>
+ * The request is timed from the <tt>receive</tt> phase of the in chain to
+ * the <tt>send-ending</tt> phase of the out or out fault chain. Body bytes
+ * are counted by wrapping the message streams.
+ */
+public class LatencyFeature extends AbstractFeature {
+
+	/**
+	 * Measurements of an exchange; the body streams may be read and written
+	 * on other threads than the one recording the exchange
+	 */
+	private static final class Timing {
+		final long start = System.nanoTime();
+		final AtomicLong bytesIn = new AtomicLong();
+		final AtomicLong bytesOut = new AtomicLong();
+	}
+
+	private static final String TIMING = Timing.class.getName();
+
+	private static final class CountingInputStream extends FilterInputStream {
+		private final Timing timing;
+
+		CountingInputStream(InputStream in, Timing timing) {
+			super(in);
+			this.timing = timing;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = in.read();
+			if (b >= 0)
+				timing.bytesIn.incrementAndGet();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int n = in.read(b, off, len);
+			if (n > 0)
+				timing.bytesIn.addAndGet(n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			final long skipped = in.skip(n);
+			timing.bytesIn.addAndGet(skipped);
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	private static final class CountingOutputStream extends
+			FilterOutputStream {
+		private final Timing timing;
+
+		CountingOutputStream(OutputStream out, Timing timing) {
+			super(out);
+			this.timing = timing;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			timing.bytesOut.incrementAndGet();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			timing.bytesOut.addAndGet(len);
+		}
+	}
+
+	/** Starts timing and counts the request body */
+	private static final class ReceiveInterceptor extends
+			AbstractPhaseInterceptor<Message> {
+		ReceiveInterceptor() {
+			super(RECEIVE);
+		}
+
+		@Override
+		public void handleMessage(Message m) throws Fault {
+			final Timing timing = new Timing();
+			final InputStream in = m.getContent(InputStream.class);
+			if (in != null)
+				m.setContent(InputStream.class, new CountingInputStream(in,
+						timing));
+			m.getExchange().put(TIMING, timing);
+		}
+	}
+
+	/**
+	 * Record the measurements of an exchange, unless they were recorded
+	 * already
+	 */
+	private static void record(LatencyMetrics metrics, Message m,
+			int defaultStatus) {
+		final Exchange exchange = m.getExchange();
+		final Timing timing = (Timing) exchange.remove(TIMING);
+		if (timing == null)
+			return;
+
+		final Integer code = (Integer) m.get(Message.RESPONSE_CODE);
+		final int status = (code != null) ? code : defaultStatus;
+		metrics.forOperation(exchange.get(OperationResourceInfo.class))
+				.record(System.nanoTime() - timing.start, status,
+						timing.bytesIn.get(), timing.bytesOut.get());
+	}
+
+	/** Counts the response body */
+	private static final class StreamInterceptor extends
+			AbstractPhaseInterceptor<Message> {
+		private final LatencyMetrics metrics;
+
+		StreamInterceptor(LatencyMetrics metrics) {
+			super(PRE_STREAM);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void handleMessage(Message m) throws Fault {
+			final Timing timing = (Timing) m.getExchange().get(TIMING);
+			final OutputStream out = m.getContent(OutputStream.class);
+			if (timing != null && out != null)
+				m.setContent(OutputStream.class, new CountingOutputStream(out,
+						timing));
+		}
+
+		/**
+		 * Writing the response failed, the chain won't reach the recording
+		 * interceptor
+		 */
+		@Override
+		public void handleFault(Message m) {
+			record(metrics, m, 500);
+		}
+	}
+
+	/** Records the measurements once the response was sent */
+	private static final class RecordingInterceptor extends
+			AbstractPhaseInterceptor<Message> {
+		private final LatencyMetrics metrics;
+
+		RecordingInterceptor(LatencyMetrics metrics) {
+			super(SEND_ENDING);
+			this.metrics = metrics;
+		}
+
+		@Override
+		public void handleMessage(Message m) throws Fault {
+			record(metrics, m, (m == m.getExchange().getOutFaultMessage()) ? 500
+					: 200);
+		}
+	}
+
+	private final LatencyMetrics metrics;
+
+	@Inject
+	public LatencyFeature(LatencyMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+		provider.getInInterceptors().add(new ReceiveInterceptor());
+
+		final StreamInterceptor stream = new StreamInterceptor(metrics);
+		final RecordingInterceptor recording = new RecordingInterceptor(
+				metrics);
+		provider.getOutInterceptors().add(stream);
+		provider.getOutInterceptors().add(recording);
+		provider.getOutFaultInterceptors().add(stream);
+		provider.getOutFaultInterceptors().add(recording);
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.ObjectName;
+
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+
+import com.google.inject.Inject;
+
+/**
+ * Server-side latency of each resource method.
+ * <p>
+ * Bound by <tt>serve().withLatencyHistograms()</tt>, which installs a
+ * {@link LatencyFeature} recording, for every request, the time from
+ * receiving it until the response was sent, the response status class and
+ * the body bytes read and written. Requests are attributed to the matched
+ * <tt>OperationResourceInfo</tt>, requests that didn't match any are
+ * recorded as <tt>UNMATCHED</tt>.
+ * <p>
+ * Operations are registered with the platform MBean server under the
+ * <tt>com.google.code.inject.jaxrs:server=...,type=Latency</tt> name of the
+ * server's {@link MBeans} when first recorded, {@link #snapshot()} reads them
+ * programmatically.
+ */
+public class LatencyMetrics {
+
+	static final String UNMATCHED = "UNMATCHED";
+
+	/** Operations by name, resource infos of the same method share them */
+	private final ConcurrentMap<String, OperationLatency> operations = new ConcurrentHashMap<String, OperationLatency>();
+	private final ConcurrentMap<OperationResourceInfo, OperationLatency> byResourceInfo = new ConcurrentHashMap<OperationResourceInfo, OperationLatency>();
+	private final MBeans mbeans;
+
+	@Inject
+	public LatencyMetrics(MBeans mbeans) {
+		this.mbeans = mbeans;
+	}
+
+	/**
+	 * @param ori
+	 *            matched operation, or null
+	 * @return recorder of the operation
+	 */
+	OperationLatency forOperation(OperationResourceInfo ori) {
+		if (ori == null)
+			return forName(UNMATCHED, null, null, null);
+
+		OperationLatency latency = byResourceInfo.get(ori);
+		if (latency == null) {
+			final Class<?> resourceClass = ori.getClassResourceInfo()
+					.getServiceClass();
+			final String httpMethod = ori.getHttpMethod();
+			latency = forName(((httpMethod != null) ? httpMethod + " " : "")
+					+ resourceClass.getName() + "."
+					+ ori.getMethodToInvoke().getName(), httpMethod,
+					resourceClass, ori);
+			byResourceInfo.put(ori, latency);
+		}
+		return latency;
+	}
+
+	private OperationLatency forName(String name, String httpMethod,
+			Class<?> resourceClass, OperationResourceInfo ori) {
+		final OperationLatency latency = operations.get(name);
+		if (latency != null)
+			return latency;
+
+		final OperationLatency created = new OperationLatency(name,
+				httpMethod, resourceClass, (ori != null) ? ori
+						.getMethodToInvoke() : null);
+		final OperationLatency existing = operations.putIfAbsent(name,
+				created);
+		if (existing != null)
+			return existing;
+		mbeans.register(created, OperationLatencyStatistics.class,
+				"type=Latency,operation=" + ObjectName.quote(name));
+		return created;
+	}
+
+	/**
+	 * @return latency of the operations recorded so far
+	 */
+	public List<OperationLatencySnapshot> snapshot() {
+		final List<OperationLatencySnapshot> snapshots = new ArrayList<OperationLatencySnapshot>();
+		for (final OperationLatency latency : operations.values())
+			snapshots.add(latency.snapshot());
+		return snapshots;
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Statistics of a server registered with the platform MBean server.
+ * <p>
+ * Names are qualified with the server, e.g.
+ * <tt>com.google.code.inject.jaxrs:server=default,type=Latency,...</tt>. A
+ * name still registered by another instance, e.g. of a discarded injector
+ * whose server was never stopped, is taken over by the latest registration.
+ * The MBeans are unregistered with {@link #unregister()}; the
+ * <tt>CXFServerModule</tt> does it when the server is stopped.
+ */
+public final class MBeans {
+
+	private final static Logger logger = Logger.getLogger(MBeans.class
+			.getName());
+
+	/** JMX domain of the MBeans */
+	public static final String DOMAIN = "com.google.code.inject.jaxrs";
+
+	/** Server name of statistics bound outside of a qualified module */
+	public static final String DEFAULT_SERVER = "default";
+
+	/** Registrations currently holding a name */
+	private static final ConcurrentMap<ObjectName, MBeans> owners = new ConcurrentHashMap<ObjectName, MBeans>();
+
+	/**
+	 * @param server
+	 *            name of the server, the qualifier of its module or
+	 *            {@link #DEFAULT_SERVER}
+	 * @return registrations of the server's statistics
+	 */
+	public static MBeans forServer(String server) {
+		return new MBeans(server);
+	}
+
+	private static MBeanServer platform() {
+		return ManagementFactory.getPlatformMBeanServer();
+	}
+
+	private final String server;
+	private final Set<ObjectName> registered = new HashSet<ObjectName>();
+	private boolean unregistered = false;
+
+	private MBeans(String server) {
+		this.server = server;
+	}
+
+	/**
+	 * @return name of the server
+	 */
+	public String getServer() {
+		return server;
+	}
+
+	/**
+	 * Register statistics as a standard MBean. Failures are logged, they
+	 * never prevent the statistics from being collected.
+	 *
+	 * @param statistics
+	 *            statistics to register
+	 * @param type
+	 *            management interface of the statistics
+	 * @param properties
+	 *            key properties of the object name after the server, e.g.
+	 *            <tt>type=Latency,operation=...</tt>
+	 * @return name of the MBean, or null if it couldn't be registered
+	 */
+	public synchronized <T> ObjectName register(T statistics, Class<T> type,
+			String properties) {
+		if (unregistered)
+			return null;
+		try {
+			final ObjectName name = new ObjectName(DOMAIN + ":server="
+					+ ObjectName.quote(server) + "," + properties);
+			final StandardMBean mbean = new StandardMBean(statistics, type);
+			try {
+				platform().registerMBean(mbean, name);
+			} catch (final InstanceAlreadyExistsException e) {
+				logger.fine("Replacing MBean " + name);
+				unregister(name);
+				platform().registerMBean(mbean, name);
+			}
+			owners.put(name, this);
+			registered.add(name);
+			return name;
+		} catch (final JMException e) {
+			logger.log(Level.WARNING, "Failed to register MBean " + properties,
+					e);
+			return null;
+		}
+	}
+
+	/**
+	 * Unregister the MBeans of the server, statistics registered afterwards
+	 * are not registered again.
+	 */
+	public synchronized void unregister() {
+		unregistered = true;
+		for (final ObjectName name : registered) {
+			if (owners.remove(name, this)) {
+				try {
+					unregister(name);
+				} catch (final JMException e) {
+					logger.log(Level.WARNING, "Failed to unregister MBean "
+							+ name, e);
+				}
+			}
+		}
+		registered.clear();
+	}
+
+	private static void unregister(ObjectName name) throws JMException {
+		try {
+			platform().unregisterMBean(name);
+		} catch (final InstanceNotFoundException e) {
+			// unregistered by someone else
+		}
+	}
+
+}
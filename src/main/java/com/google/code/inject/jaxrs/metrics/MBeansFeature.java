@@ -0,0 +1,62 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.endpoint.ServerLifeCycleListener;
+import org.apache.cxf.endpoint.ServerLifeCycleManager;
+import org.apache.cxf.feature.AbstractFeature;
+
+import com.google.inject.Inject;
+
+/**
+ * Unregisters the {@link MBeans} of a server when it's stopped.
+ * <p>
+ * The MBeans are not registered again if the server is restarted, the
+ * statistics keep being collected though.
+ */
+public class MBeansFeature extends AbstractFeature {
+
+	private final MBeans mbeans;
+
+	@Inject
+	public MBeansFeature(MBeans mbeans) {
+		this.mbeans = mbeans;
+	}
+
+	@Override
+	public void initialize(final Server server, Bus bus) {
+		final ServerLifeCycleManager manager = bus
+				.getExtension(ServerLifeCycleManager.class);
+		if (manager == null)
+			return;
+		manager.registerListener(new ServerLifeCycleListener() {
+			@Override
+			public void startServer(Server started) {
+			}
+
+			@Override
+			public void stopServer(Server stopped) {
+				if (stopped != server)
+					return;
+				mbeans.unregister();
+				manager.unRegisterListener(this);
+			}
+		});
+	}
+
+}
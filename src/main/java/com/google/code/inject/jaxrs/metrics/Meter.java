@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events and their one-minute, exponentially weighted rate.
+ * <p>
+ * The rate is updated every five seconds by the thread that marks or reads
+ * the meter first after the interval passes, there is no background thread.
+ */
+public final class Meter {
+
+	private static final long TICK = SECONDS.toNanos(5);
+	private static final double ALPHA = 1 - Math.exp(-5 / 60.0);
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong uncounted = new AtomicLong();
+	private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+
+	/** events per nanosecond, written by the ticking thread only */
+	private volatile double rate;
+	private volatile boolean initialized;
+
+	/**
+	 * Count an event
+	 */
+	public void mark() {
+		tickIfNecessary();
+		count.incrementAndGet();
+		uncounted.incrementAndGet();
+	}
+
+	/**
+	 * @return number of events
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return events per second over the last minute
+	 */
+	public double getOneMinuteRate() {
+		tickIfNecessary();
+		return rate * SECONDS.toNanos(1);
+	}
+
+	private void tickIfNecessary() {
+		final long previous = lastTick.get();
+		final long age = System.nanoTime() - previous;
+		if (age < TICK || !lastTick.compareAndSet(previous, previous + age
+				- age % TICK))
+			return;
+
+		for (long i = age / TICK; i > 0; i--) {
+			final double instant = (double) uncounted.getAndSet(0) / TICK;
+			if (initialized) {
+				rate += ALPHA * (instant - rate);
+			} else {
+				rate = instant;
+				initialized = true;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency recorder of a resource method.
+ * <p>
+ * Each thread records into one of several stripes, so concurrent requests
+ * don't contend on the same counters. Stripes are merged when read.
+ */
+final class OperationLatency implements OperationLatencyStatistics {
+
+	private static final int STRIPES;
+
+	static {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < processors && stripes < 8)
+			stripes *= 2;
+		STRIPES = stripes;
+	}
+
+	private static final class Stripe {
+		final Histogram latency = new Histogram();
+		/** indexed by status class */
+		final AtomicLongArray responses = new AtomicLongArray(6);
+		final AtomicLong bytesIn = new AtomicLong();
+		final AtomicLong bytesOut = new AtomicLong();
+	}
+
+	private final String operation;
+	private final String httpMethod;
+	private final Class<?> resourceClass;
+	private final Method method;
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	OperationLatency(String operation, String httpMethod,
+			Class<?> resourceClass, Method method) {
+		this.operation = operation;
+		this.httpMethod = httpMethod;
+		this.resourceClass = resourceClass;
+		this.method = method;
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
+	/**
+	 * @param nanos
+	 *            latency
+	 * @param status
+	 *            response status code
+	 * @param bytesIn
+	 *            request body bytes read
+	 * @param bytesOut
+	 *            response body bytes written
+	 */
+	void record(long nanos, int status, long bytesIn, long bytesOut) {
+		final Stripe stripe = stripes[(int) Thread.currentThread().getId()
+				& (STRIPES - 1)];
+		stripe.latency.record(nanos);
+		final int statusClass = status / 100;
+		if (statusClass > 0 && statusClass < 6)
+			stripe.responses.incrementAndGet(statusClass);
+		if (bytesIn != 0)
+			stripe.bytesIn.addAndGet(bytesIn);
+		if (bytesOut != 0)
+			stripe.bytesOut.addAndGet(bytesOut);
+	}
+
+	OperationLatencySnapshot snapshot() {
+		final long[] counts = new long[Histogram.BUCKETS];
+		final long[] responses = new long[6];
+		long count = 0;
+		long sum = 0;
+		long max = 0;
+		long bytesIn = 0;
+		long bytesOut = 0;
+		for (final Stripe stripe : stripes) {
+			stripe.latency.addTo(counts);
+			count += stripe.latency.getCount();
+			sum += stripe.latency.getSum();
+			max = Math.max(max, stripe.latency.getMax());
+			for (int i = 0; i < responses.length; i++)
+				responses[i] += stripe.responses.get(i);
+			bytesIn += stripe.bytesIn.get();
+			bytesOut += stripe.bytesOut.get();
+		}
+		return new OperationLatencySnapshot(operation, httpMethod,
+				resourceClass, method, new HistogramSnapshot(counts, count,
+						sum, max), responses, bytesIn, bytesOut);
+	}
+
+	private static long micros(long nanos) {
+		return NANOSECONDS.toMicros(nanos);
+	}
+
+	@Override
+	public String getOperation() {
+		return operation;
+	}
+
+	@Override
+	public long getRequests() {
+		return snapshot().getLatency().getCount();
+	}
+
+	@Override
+	public double getMeanLatency() {
+		return snapshot().getLatency().getMean() / 1000;
+	}
+
+	@Override
+	public long getLatency50thPercentile() {
+		return micros(snapshot().getLatency().getPercentile(0.5));
+	}
+
+	@Override
+	public long getLatency95thPercentile() {
+		return micros(snapshot().getLatency().getPercentile(0.95));
+	}
+
+	@Override
+	public long getLatency99thPercentile() {
+		return micros(snapshot().getLatency().getPercentile(0.99));
+	}
+
+	@Override
+	public long getLatency999thPercentile() {
+		return micros(snapshot().getLatency().getPercentile(0.999));
+	}
+
+	@Override
+	public long getMaxLatency() {
+		return micros(snapshot().getLatency().getMax());
+	}
+
+	@Override
+	public long getResponses1xx() {
+		return snapshot().getResponses(1);
+	}
+
+	@Override
+	public long getResponses2xx() {
+		return snapshot().getResponses(2);
+	}
+
+	@Override
+	public long getResponses3xx() {
+		return snapshot().getResponses(3);
+	}
+
+	@Override
+	public long getResponses4xx() {
+		return snapshot().getResponses(4);
+	}
+
+	@Override
+	public long getResponses5xx() {
+		return snapshot().getResponses(5);
+	}
+
+	@Override
+	public long getBytesIn() {
+		return snapshot().getBytesIn();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return snapshot().getBytesOut();
+	}
+
+}
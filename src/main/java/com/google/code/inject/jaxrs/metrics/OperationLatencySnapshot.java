@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import java.lang.reflect.Method;
+
+/**
+ * Immutable copy of the latency recorded for a resource method, see
+ * {@link LatencyMetrics#snapshot()}
+ */
+public final class OperationLatencySnapshot {
+
+	private final String operation;
+	private final String httpMethod;
+	private final Class<?> resourceClass;
+	private final Method method;
+	private final HistogramSnapshot latency;
+	private final long[] responses;
+	private final long bytesIn;
+	private final long bytesOut;
+
+	OperationLatencySnapshot(String operation, String httpMethod,
+			Class<?> resourceClass, Method method, HistogramSnapshot latency,
+			long[] responses, long bytesIn, long bytesOut) {
+		this.operation = operation;
+		this.httpMethod = httpMethod;
+		this.resourceClass = resourceClass;
+		this.method = method;
+		this.latency = latency;
+		this.responses = responses;
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+	}
+
+	/**
+	 * @return HTTP method, resource class and method name
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return HTTP method, or null for requests that didn't match a resource
+	 *         method
+	 */
+	public String getHttpMethod() {
+		return httpMethod;
+	}
+
+	/**
+	 * @return resource class, or null for requests that didn't match a
+	 *         resource method
+	 */
+	public Class<?> getResourceClass() {
+		return resourceClass;
+	}
+
+	/**
+	 * @return resource method, or null for requests that didn't match a
+	 *         resource method
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return latencies in nanoseconds
+	 */
+	public HistogramSnapshot getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @param statusClass
+	 *            first digit of the status code, 1 to 5
+	 * @return number of responses in the status class
+	 */
+	public long getResponses(int statusClass) {
+		return (statusClass > 0 && statusClass < responses.length) ? responses[statusClass]
+				: 0;
+	}
+
+	/**
+	 * @return request body bytes read
+	 */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	/**
+	 * @return response body bytes written
+	 */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+/**
+ * Server-side latency of a resource method, see {@link LatencyMetrics}.
+ * <p>
+ * Latencies are in microseconds, from receiving the request until the
+ * response was sent.
+ */
+public interface OperationLatencyStatistics {
+
+	/**
+	 * @return HTTP method, resource class and method name
+	 */
+	String getOperation();
+
+	long getRequests();
+
+	double getMeanLatency();
+
+	long getLatency50thPercentile();
+
+	long getLatency95thPercentile();
+
+	long getLatency99thPercentile();
+
+	long getLatency999thPercentile();
+
+	long getMaxLatency();
+
+	long getResponses1xx();
+
+	long getResponses2xx();
+
+	long getResponses3xx();
+
+	long getResponses4xx();
+
+	long getResponses5xx();
+
+	long getBytesIn();
+
+	long getBytesOut();
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Histogram of the time spent in a phase or interceptor
+ */
+final class PhaseTiming implements TimingStatistics {
+
+	private final String name;
+	private final Histogram time = new Histogram();
+
+	PhaseTiming(String name) {
+		this.name = name;
+	}
+
+	void record(long nanos) {
+		time.record(nanos);
+	}
+
+	HistogramSnapshot snapshot() {
+		return time.snapshot();
+	}
+
+	private static long micros(long nanos) {
+		return NANOSECONDS.toMicros(nanos);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getSamples() {
+		return time.getCount();
+	}
+
+	@Override
+	public double getMeanTime() {
+		return time.getMean() / 1000;
+	}
+
+	@Override
+	public long getTime50thPercentile() {
+		return micros(time.getPercentile(0.5));
+	}
+
+	@Override
+	public long getTime95thPercentile() {
+		return micros(time.getPercentile(0.95));
+	}
+
+	@Override
+	public long getTime99thPercentile() {
+		return micros(time.getPercentile(0.99));
+	}
+
+	@Override
+	public long getMaxTime() {
+		return micros(time.getMax());
+	}
+
+}
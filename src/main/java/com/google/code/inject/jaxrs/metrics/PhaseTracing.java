@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static com.google.inject.internal.util.$Preconditions.checkArgument;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Message;
+
+import com.google.code.inject.jaxrs.metrics.ChainTrace.Segment;
+
+/**
+ * Time spent in each phase and interceptor of the CXF interceptor chains.
+ * <p>
+ * Bound by <tt>serve().withPhaseTracing(...)</tt>, which installs a
+ * {@link PhaseTracingFeature}. For one in <tt>sampling</tt> requests the
+ * feature places marker interceptors between the interceptors of the in,
+ * out and out fault chains of that request only; the interceptors
+ * themselves are not wrapped. Timings are aggregated per chain phase and
+ * per interceptor class and registered with the platform MBean server under
+ * the <tt>com.google.code.inject.jaxrs:server=...,type=PhaseTiming</tt> and
+ * <tt>type=InterceptorTiming</tt> names of the server's {@link MBeans}.
+ * <p>
+ * Sampled requests slower than the threshold are logged with their full
+ * breakdown at <tt>INFO</tt> level.
+ */
+public class PhaseTracing {
+
+	private final static Logger logger = Logger.getLogger(PhaseTracing.class
+			.getName());
+
+	private final int sampling;
+	private final long slowThresholdNanos;
+
+	private final ConcurrentMap<String, PhaseTiming> phases = new ConcurrentHashMap<String, PhaseTiming>();
+	private final ConcurrentMap<String, PhaseTiming> interceptors = new ConcurrentHashMap<String, PhaseTiming>();
+	private final MBeans mbeans;
+
+	/**
+	 * @param sampling
+	 *            trace one in <tt>sampling</tt> requests
+	 * @param slowThreshold
+	 *            log sampled requests taking at least this long
+	 * @param unit
+	 *            unit of the threshold
+	 * @param mbeans
+	 *            registrations of the server
+	 */
+	public PhaseTracing(int sampling, long slowThreshold, TimeUnit unit,
+			MBeans mbeans) {
+		checkArgument(sampling > 0, "sampling must be positive");
+		this.sampling = sampling;
+		this.slowThresholdNanos = unit.toNanos(slowThreshold);
+		this.mbeans = mbeans;
+	}
+
+	/**
+	 * @return true if the current request should be traced
+	 */
+	boolean sample() {
+		return sampling == 1
+				|| ThreadLocalRandom.current().nextInt(sampling) == 0;
+	}
+
+	/**
+	 * Aggregate the timings of a traced request.
+	 *
+	 * @param trace
+	 *            finished trace
+	 * @param total
+	 *            total time of the request
+	 * @param m
+	 *            in message of the request
+	 */
+	void completed(ChainTrace trace, long total, Message m) {
+		final Map<String, Long> perPhase = new LinkedHashMap<String, Long>();
+		for (final Segment segment : trace.segments) {
+			timing(interceptors, segment.interceptor,
+					"type=InterceptorTiming,interceptor="
+							+ ObjectName.quote(segment.interceptor)).record(
+					segment.nanos);
+
+			final String phase = segment.chain + ":" + segment.phase;
+			final Long sum = perPhase.get(phase);
+			perPhase.put(phase, (sum != null) ? sum + segment.nanos
+					: segment.nanos);
+		}
+		for (final Map.Entry<String, Long> entry : perPhase.entrySet()) {
+			final String phase = entry.getKey();
+			final int colon = phase.indexOf(':');
+			timing(phases, phase,
+					"type=PhaseTiming,chain=" + phase.substring(0, colon)
+							+ ",phase=" + phase.substring(colon + 1)).record(
+					entry.getValue());
+		}
+
+		if (total >= slowThresholdNanos)
+			logger.info(describe(trace, total, m));
+	}
+
+	private PhaseTiming timing(ConcurrentMap<String, PhaseTiming> map,
+			String name, String properties) {
+		final PhaseTiming timing = map.get(name);
+		if (timing != null)
+			return timing;
+
+		final PhaseTiming created = new PhaseTiming(name);
+		final PhaseTiming existing = map.putIfAbsent(name, created);
+		if (existing != null)
+			return existing;
+		mbeans.register(created, TimingStatistics.class, properties);
+		return created;
+	}
+
+	private static String describe(ChainTrace trace, long total, Message m) {
+		final StringBuilder sb = new StringBuilder("Slow request");
+		if (m.get(Message.HTTP_REQUEST_METHOD) != null)
+			sb.append(' ').append(m.get(Message.HTTP_REQUEST_METHOD))
+					.append(' ').append(m.get(Message.REQUEST_URI));
+		final OperationResourceInfo ori = m.getExchange().get(
+				OperationResourceInfo.class);
+		if (ori != null)
+			sb.append(" (").append(ori.getMethodToInvoke().getName())
+					.append(" of ").append(ori.getClassResourceInfo()
+							.getServiceClass().getName()).append(')');
+		sb.append(" took ").append(total / 1000).append(" us");
+		for (final Segment segment : trace.segments) {
+			sb.append("\n  ").append(segment.chain).append(' ')
+					.append(segment.phase).append(' ')
+					.append(segment.interceptor).append(' ')
+					.append(segment.nanos / 1000).append(" us");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return time per sampled request spent in each phase, by chain and
+	 *         phase, e.g. <tt>in:unmarshal</tt>
+	 */
+	public Map<String, HistogramSnapshot> getPhaseTimings() {
+		return snapshot(phases);
+	}
+
+	/**
+	 * @return time per run of each interceptor class
+	 */
+	public Map<String, HistogramSnapshot> getInterceptorTimings() {
+		return snapshot(interceptors);
+	}
+
+	private static Map<String, HistogramSnapshot> snapshot(
+			Map<String, PhaseTiming> timings) {
+		final Map<String, HistogramSnapshot> snapshot = new HashMap<String, HistogramSnapshot>();
+		for (final Map.Entry<String, PhaseTiming> entry : timings.entrySet())
+			snapshot.put(entry.getKey(), entry.getValue().snapshot());
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static org.apache.cxf.phase.Phase.RECEIVE;
+import static org.apache.cxf.phase.Phase.SETUP;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.interceptor.InterceptorChain;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.PhaseInterceptor;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+
+import com.google.inject.Inject;
+
+/**
+ * Installs the markers timing the interceptor chains of sampled requests,
+ * see {@link PhaseTracing}.
+ */
+public class PhaseTracingFeature extends AbstractFeature {
+
+	private static final String TRACE = ChainTrace.class.getName();
+
+	/** Marks the start of an interceptor, or the end of a chain */
+	private static final class Marker extends AbstractPhaseInterceptor<Message> {
+		private final PhaseTracing tracing;
+		private final ChainTrace trace;
+		private final String chain;
+		/** interceptor about to run, null at the end of a chain */
+		private final String interceptor;
+		private final boolean finishing;
+
+		Marker(String id, String phase, PhaseTracing tracing,
+				ChainTrace trace, String chain, String interceptor,
+				boolean finishing) {
+			super(id, phase);
+			this.tracing = tracing;
+			this.trace = trace;
+			this.chain = chain;
+			this.interceptor = interceptor;
+			this.finishing = finishing;
+		}
+
+		@Override
+		public void handleMessage(Message m) throws Fault {
+			if (trace.isFinished())
+				return;
+			if (interceptor != null) {
+				trace.enter(chain, getPhase(), interceptor);
+			} else if (finishing) {
+				final Exchange exchange = m.getExchange();
+				exchange.remove(TRACE);
+				tracing.completed(trace, trace.finish(),
+						exchange.getInMessage());
+			} else {
+				trace.exit();
+			}
+		}
+	}
+
+	/** Starts tracing sampled requests and places the markers */
+	private static final class Installer extends
+			AbstractPhaseInterceptor<Message> {
+		private final PhaseTracing tracing;
+		private final boolean inbound;
+
+		Installer(String phase, PhaseTracing tracing, boolean inbound) {
+			super(phase);
+			this.tracing = tracing;
+			this.inbound = inbound;
+		}
+
+		@Override
+		public void handleMessage(Message m) throws Fault {
+			final Exchange exchange = m.getExchange();
+			final ChainTrace trace;
+			if (inbound) {
+				if (!tracing.sample())
+					return;
+				trace = new ChainTrace();
+				exchange.put(TRACE, trace);
+			} else {
+				trace = (ChainTrace) exchange.get(TRACE);
+				if (trace == null)
+					return;
+			}
+
+			final InterceptorChain chain = m.getInterceptorChain();
+			if (!(chain instanceof PhaseInterceptorChain))
+				return;
+			final boolean fault = (m == exchange.getOutFaultMessage());
+			install((PhaseInterceptorChain) chain, trace, inbound ? "in"
+					: fault ? "out-fault" : "out", inbound || fault);
+		}
+
+		private void install(PhaseInterceptorChain chain, ChainTrace trace,
+				String name, boolean finishing) {
+			final List<PhaseInterceptor<?>> following = new ArrayList<PhaseInterceptor<?>>();
+			boolean found = false;
+			for (final Interceptor<?> i : chain) {
+				if (i == this)
+					found = true;
+				else if (found && i instanceof PhaseInterceptor)
+					following.add((PhaseInterceptor<?>) i);
+			}
+
+			int n = 0;
+			PhaseInterceptor<?> previous = this;
+			for (final PhaseInterceptor<?> p : following) {
+				final Marker marker = new Marker(Marker.class.getName() + "#"
+						+ name + n++, p.getPhase(), tracing, trace, name, p
+						.getClass().getName(), false);
+				marker.addBefore(p.getId());
+				if (previous.getPhase().equals(p.getPhase()))
+					marker.addAfter(previous.getId());
+				chain.add(marker, true);
+				previous = p;
+			}
+
+			final Marker end = new Marker(Marker.class.getName() + "#" + name
+					+ n, previous.getPhase(), tracing, trace, name, null,
+					finishing);
+			end.addAfter(previous.getId());
+			chain.add(end, true);
+		}
+	}
+
+	private final PhaseTracing tracing;
+
+	@Inject
+	public PhaseTracingFeature(PhaseTracing tracing) {
+		this.tracing = tracing;
+	}
+
+	@Override
+	protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+		provider.getInInterceptors().add(
+				new Installer(RECEIVE, tracing, true));
+
+		final Installer out = new Installer(SETUP, tracing, false);
+		provider.getOutInterceptors().add(out);
+		provider.getOutFaultInterceptors().add(out);
+	}
+
+}
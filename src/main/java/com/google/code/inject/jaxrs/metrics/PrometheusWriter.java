@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+/**
+ * Writes metric families in the Prometheus text exposition format, version
+ * 0.0.4.
+ */
+final class PrometheusWriter {
+
+	static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+	private static final String PREFIX = "guice_cxf_";
+
+	private static final double[] QUANTILES = { 0.5, 0.95, 0.99, 0.999 };
+
+	private final StringBuilder sb = new StringBuilder();
+
+	/**
+	 * Start a metric family, its samples must follow
+	 */
+	PrometheusWriter family(String name, String type, String help) {
+		sb.append("# HELP ").append(PREFIX).append(name).append(' ')
+				.append(help).append('\n');
+		sb.append("# TYPE ").append(PREFIX).append(name).append(' ')
+				.append(type).append('\n');
+		return this;
+	}
+
+	PrometheusWriter sample(String name, String labels, double value) {
+		sb.append(PREFIX).append(name);
+		if (labels.length() > 0)
+			sb.append('{').append(labels).append('}');
+		sb.append(' ');
+		if (value == (long) value)
+			sb.append((long) value);
+		else
+			sb.append(value);
+		sb.append('\n');
+		return this;
+	}
+
+	/**
+	 * Write a summary of a histogram
+	 *
+	 * @param unit
+	 *            recorded values per base unit, e.g. nanoseconds per second
+	 */
+	PrometheusWriter summary(String name, String labels,
+			HistogramSnapshot snapshot, double unit) {
+		for (final double q : QUANTILES)
+			sample(name, quantile(labels, q), snapshot.getPercentile(q)
+					/ unit);
+		sample(name + "_sum", labels, snapshot.getSum() / unit);
+		return sample(name + "_count", labels, snapshot.getCount());
+	}
+
+	private static String quantile(String labels, double q) {
+		return ((labels.length() > 0) ? labels + "," : "") + "quantile=\""
+				+ q + "\"";
+	}
+
+	/**
+	 * @return label pair with the value escaped
+	 */
+	static String label(String name, String value) {
+		final StringBuilder sb = new StringBuilder(name).append("=\"");
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '\\' || c == '"')
+				sb.append('\\').append(c);
+			else if (c == '\n')
+				sb.append("\\n");
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	@Override
+	public String toString() {
+		return sb.toString();
+	}
+
+}
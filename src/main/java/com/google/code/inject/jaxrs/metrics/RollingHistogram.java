@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static com.google.inject.internal.util.$Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histogram of the values recorded in a sliding time window.
+ * <p>
+ * The window is split in intervals, each counted by its own
+ * {@link Histogram}. An interval is replaced by a fresh histogram when it's
+ * reused, so recording allocates once per interval at most.
+ */
+public final class RollingHistogram {
+
+	private static final class Interval {
+		final long epoch;
+		final Histogram histogram = new Histogram();
+
+		Interval(long epoch) {
+			this.epoch = epoch;
+		}
+	}
+
+	private final long intervalNanos;
+	private final AtomicReferenceArray<Interval> intervals;
+
+	/**
+	 * @param window
+	 *            length of the window
+	 * @param unit
+	 *            unit of the window length
+	 * @param intervals
+	 *            number of intervals the window is split into
+	 */
+	public RollingHistogram(long window, TimeUnit unit, int intervals) {
+		checkArgument(intervals > 0, "intervals must be positive");
+		this.intervalNanos = Math.max(1, unit.toNanos(window) / intervals);
+		this.intervals = new AtomicReferenceArray<Interval>(intervals);
+	}
+
+	/**
+	 * @param value
+	 *            value to record, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		final long epoch = System.nanoTime() / intervalNanos;
+		final int length = intervals.length();
+		// nanoTime may be negative
+		final int index = (int) (((epoch % length) + length) % length);
+
+		Interval interval = intervals.get(index);
+		while (interval == null || interval.epoch < epoch) {
+			final Interval fresh = new Interval(epoch);
+			if (intervals.compareAndSet(index, interval, fresh)) {
+				interval = fresh;
+				break;
+			}
+			interval = intervals.get(index);
+		}
+		interval.histogram.record(value);
+	}
+
+	/**
+	 * @return values recorded in the window
+	 */
+	public HistogramSnapshot snapshot() {
+		final long epoch = System.nanoTime() / intervalNanos;
+		final long[] counts = new long[Histogram.BUCKETS];
+		long count = 0;
+		long sum = 0;
+		long max = 0;
+		for (int i = 0; i < intervals.length(); i++) {
+			final Interval interval = intervals.get(i);
+			if (interval == null || interval.epoch <= epoch - intervals.length())
+				continue;
+			final Histogram h = interval.histogram;
+			h.addTo(counts);
+			count += h.getCount();
+			sum += h.getSum();
+			max = Math.max(max, h.getMax());
+		}
+		return new HistogramSnapshot(counts, count, sum, max);
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+/**
+ * Time spent in an interceptor chain phase or interceptor class, see
+ * {@link PhaseTracing}.
+ * <p>
+ * Times are in microseconds, per sampled request.
+ */
+public interface TimingStatistics {
+
+	/**
+	 * @return chain and phase, or interceptor class name
+	 */
+	String getName();
+
+	long getSamples();
+
+	double getMeanTime();
+
+	long getTime50thPercentile();
+
+	long getTime95thPercentile();
+
+	long getTime99thPercentile();
+
+	long getMaxTime();
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.inject.internal.util.$Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+
+import com.google.code.inject.jaxrs.metrics.MBeans;
+import com.google.code.inject.jaxrs.metrics.RollingHistogram;
+
+/**
+ * Bytes allocated by resource invocations, per resource method.
+ * <p>
+ * Collected for the servers of an injector that binds the metrics, e.g. by
+ * <tt>serve().withAllocationSampling(sampling)</tt>. The
+ * {@link GuiceInterceptorWrapper} then reads the allocation counter of the
+ * invoking thread before and after a sampled invocation and attributes the
+ * difference to the resource method that was invoked. Allocations of
+ * threads the invocation hands work to are not counted.
+ * <p>
+ * Requires a JVM providing <tt>com.sun.management.ThreadMXBean</tt>. The
+ * statistics are registered with the platform MBean server under the
+ * <tt>com.google.code.inject.jaxrs:server=...,type=Allocations</tt> name of
+ * the {@link MBeans} they are created with.
+ */
+public final class AllocationMetrics {
+
+	/** Isolates the HotSpot specific management API */
+	private static final class ThreadAllocations {
+		private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+
+		static void enable() {
+			if (!threads.isThreadAllocatedMemorySupported())
+				throw new UnsupportedOperationException(
+						"Thread allocation counters are not supported by the JVM");
+			threads.setThreadAllocatedMemoryEnabled(true);
+		}
+
+		static long currentThread() {
+			return threads.getThreadAllocatedBytes(Thread.currentThread()
+					.getId());
+		}
+	}
+
+	/**
+	 * Create allocation metrics, to be bound in the injector of the servers
+	 * to measure.
+	 *
+	 * @param sampling
+	 *            measure one in <tt>sampling</tt> invocations
+	 * @param mbeans
+	 *            registrations of the server
+	 * @return new metrics
+	 * @throws UnsupportedOperationException
+	 *             if the JVM doesn't count thread allocations
+	 */
+	public static AllocationMetrics create(int sampling, MBeans mbeans) {
+		checkArgument(sampling > 0, "sampling must be positive");
+		try {
+			ThreadAllocations.enable();
+		} catch (final LinkageError e) {
+			throw new UnsupportedOperationException(
+					"Thread allocation counters are not available", e);
+		}
+		return new AllocationMetrics(sampling, mbeans);
+	}
+
+	/**
+	 * @return bytes allocated by the current thread so far
+	 */
+	static long allocatedBytes() {
+		return ThreadAllocations.currentThread();
+	}
+
+	/** Allocations of a single resource method */
+	private static final class OperationStats implements
+			OperationAllocationStatistics {
+		private final String operation;
+		private final AtomicLong samples = new AtomicLong();
+		private final AtomicLong totalBytes = new AtomicLong();
+		private final RollingHistogram bytes = new RollingHistogram(1,
+				MINUTES, 6);
+
+		OperationStats(String operation) {
+			this.operation = operation;
+		}
+
+		void record(long allocated) {
+			samples.incrementAndGet();
+			totalBytes.addAndGet(allocated);
+			bytes.record(allocated);
+		}
+
+		@Override
+		public String getOperation() {
+			return operation;
+		}
+
+		@Override
+		public long getSamples() {
+			return samples.get();
+		}
+
+		@Override
+		public long getTotalBytes() {
+			return totalBytes.get();
+		}
+
+		@Override
+		public double getMeanBytes() {
+			final long n = samples.get();
+			return (n == 0) ? 0 : (double) totalBytes.get() / n;
+		}
+
+		@Override
+		public long getBytes50thPercentile() {
+			return bytes.snapshot().getPercentile(0.5);
+		}
+
+		@Override
+		public long getBytes95thPercentile() {
+			return bytes.snapshot().getPercentile(0.95);
+		}
+
+		@Override
+		public long getBytes99thPercentile() {
+			return bytes.snapshot().getPercentile(0.99);
+		}
+
+		@Override
+		public long getMaxBytes() {
+			return bytes.snapshot().getMax();
+		}
+	}
+
+	/** Operations by name, resource infos of the same method share them */
+	private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<String, OperationStats>();
+	private final ConcurrentMap<OperationResourceInfo, OperationStats> byResourceInfo = new ConcurrentHashMap<OperationResourceInfo, OperationStats>();
+
+	private final int sampling;
+	private final MBeans mbeans;
+
+	private AllocationMetrics(int sampling, MBeans mbeans) {
+		this.sampling = sampling;
+		this.mbeans = mbeans;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the current invocation is sampled
+	 */
+	boolean sample() {
+		return sampling == 1
+				|| ThreadLocalRandom.current().nextInt(sampling) == 0;
+	}
+
+	/**
+	 * Attribute allocations to the operation invoked in the exchange.
+	 *
+	 * @param exchange
+	 *            exchange of the sampled invocation
+	 * @param allocated
+	 *            bytes allocated by the invocation
+	 */
+	void record(Exchange exchange, long allocated) {
+		final OperationResourceInfo ori = exchange
+				.get(OperationResourceInfo.class);
+		if (ori != null)
+			forOperation(ori).record(allocated);
+	}
+
+	private OperationStats forOperation(OperationResourceInfo ori) {
+		OperationStats stats = byResourceInfo.get(ori);
+		if (stats != null)
+			return stats;
+
+		final String name = ori.getClassResourceInfo().getServiceClass()
+				.getName()
+				+ "." + ori.getMethodToInvoke().getName();
+		stats = operations.get(name);
+		if (stats == null) {
+			final OperationStats created = new OperationStats(name);
+			stats = operations.putIfAbsent(name, created);
+			if (stats == null) {
+				stats = created;
+				mbeans.register(created, OperationAllocationStatistics.class,
+						"type=Allocations,operation=" + ObjectName.quote(name));
+			}
+		}
+		byResourceInfo.put(ori, stats);
+		return stats;
+	}
+
+	/**
+	 * @return measure one in <tt>sampling</tt> invocations
+	 */
+	public int getSampling() {
+		return sampling;
+	}
+
+	/**
+	 * @return statistics of the operations sampled so far
+	 */
+	public Collection<OperationAllocationStatistics> getOperationStatistics() {
+		return Collections
+				.<OperationAllocationStatistics> unmodifiableCollection(operations
+						.values());
+	}
+
+}
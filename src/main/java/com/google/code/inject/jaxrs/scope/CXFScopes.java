@@ -17,18 +17,18 @@ package com.google.code.inject.jaxrs.scope;
 
 import static com.google.code.inject.jaxrs.scope.CXFScopes.Marker.NULL;
 import static com.google.code.inject.jaxrs.scope.GuiceInterceptorWrapper.getExchange;
+import static com.google.code.inject.jaxrs.scope.GuiceInterceptorWrapper.getStore;
+import static com.google.code.inject.jaxrs.scope.GuiceInterceptorWrapper.markExchangeBacked;
+import static com.google.code.inject.jaxrs.scope.GuiceInterceptorWrapper.readExchange;
 import static com.google.code.inject.jaxrs.util.ScopeUtils.isCircularProxy;
-import static com.google.inject.internal.util.$Preconditions.checkArgument;
+import static com.google.inject.internal.util.$Preconditions.checkNotNull;
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.ElementType.TYPE;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
-import static java.util.Collections.unmodifiableSet;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Request;
@@ -36,37 +36,47 @@ import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.Providers;
 
+import org.apache.cxf.Bus;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.endpoint.Endpoint;
 import org.apache.cxf.jaxrs.ext.MessageContext;
 import org.apache.cxf.jaxrs.ext.MessageContextImpl;
+import org.apache.cxf.jaxrs.impl.ProvidersImpl;
 import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
 import org.apache.cxf.service.Service;
 
+import com.google.code.inject.jaxrs.internal.FlightRecorderEvents;
 import com.google.code.inject.jaxrs.util.ScopeUtils;
 import com.google.inject.AbstractModule;
+import com.google.inject.Binder;
 import com.google.inject.Binding;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.OutOfScopeException;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.ProvisionException;
 import com.google.inject.Scope;
 import com.google.inject.ScopeAnnotation;
 
 public class CXFScopes {
 	/**
-	 * Binds the scope annotation and provides @Context instances
+	 * Binds the scope annotation and provides @Context instances, the
+	 * <tt>Exchange</tt> and the <tt>ContinuationProvider</tt>
+	 * <p>
+	 * The @Context instances are read-only views of the current in message,
+	 * they don't copy anything from the message until it's actually read.
 	 */
 	public static class Module extends AbstractModule {
 
-		@SuppressWarnings("unchecked")
 		@Override
 		protected void configure() {
 			bindScope(RequestScope.class, REQUEST);
 
-			for (final Key<?> key : EXCHANGE_CONTEXT_KEYS) {
-				bind(key).toProvider(DUMMY_PROVIDER).in(REQUEST);
-			}
-
+			bindToExchange(binder(), Key.get(Exchange.class), EXCHANGE);
+			bindToExchange(binder(), Key.get(ContinuationProvider.class),
+					CONTINUATION_PROVIDER);
 		}
 
 		@Provides
@@ -77,40 +87,44 @@ public class CXFScopes {
 
 		@Provides
 		@RequestScope
-		protected Service provideService(MessageContext messageContext) {
-			return (Service) messageContext
-					.getContextualProperty(Service.class);
+		protected Service provideService(Exchange ex) {
+			return ex.get(Service.class);
+		}
+
+		@Provides
+		@RequestScope
+		protected HttpHeaders provideHttpHeaders(Exchange ex) {
+			return new LazyHttpHeaders(ex.getInMessage());
 		}
 
 		@Provides
 		@RequestScope
-		protected HttpHeaders provideHttpHeaders(MessageContext messageContext) {
-			return messageContext.getHttpHeaders();
+		protected Providers provideProviders(Exchange ex) {
+			return new ProvidersImpl(ex.getInMessage());
 		}
 
 		@Provides
 		@RequestScope
-		protected Providers provideProviders(MessageContext messageContext) {
-			return messageContext.getProviders();
+		protected UriInfo provideUriInfo(Exchange ex) {
+			return new LazyUriInfo(ex.getInMessage());
 		}
 
 		@Provides
 		@RequestScope
-		protected UriInfo provideUriInfo(MessageContext messageContext) {
-			return messageContext.getUriInfo();
+		protected Request provideRequest(Exchange ex) {
+			return new LazyRequest(ex.getInMessage());
 		}
 
 		@Provides
 		@RequestScope
-		protected Request provideRequest(MessageContext messageContext) {
-			return messageContext.getRequest();
+		protected SecurityContext provideSecurityContext(Exchange ex) {
+			return new LazySecurityContext(ex.getInMessage());
 		}
 
 		@Provides
 		@RequestScope
-		protected SecurityContext provideSecurityContext(
-				MessageContext messageContext) {
-			return messageContext.getSecurityContext();
+		protected RequestEntity provideRequestEntity(Exchange ex) {
+			return new RequestEntity(ex.getInMessage());
 		}
 
 	}
@@ -122,15 +136,79 @@ public class CXFScopes {
 	}
 
 	/**
-	 * Dummy marker to bind {@value #EXCHANGE_CONTEXT_KEYS} to
+	 * Binds the CXF objects reachable from the exchange: the in
+	 * <tt>Message</tt>, the <tt>Endpoint</tt>, the <tt>Bus</tt> and, when the
+	 * servlet API is available, the <tt>HttpServletRequest</tt> and
+	 * <tt>HttpServletResponse</tt>.
+	 * <p>
+	 * They are read from the exchange every time they are provided. Don't
+	 * install it if the injector already binds some of these keys, e.g. the
+	 * <tt>Bus</tt> or the guice-servlet request, bind the ones you need with
+	 * {@link CXFScopes#bindToExchange(Binder, Key, ExchangeAccessor)}
+	 * instead.
 	 */
-	@SuppressWarnings("rawtypes")
-	private static final Provider DUMMY_PROVIDER = new Provider<Void>() {
+	public static class ExchangeContextModule extends AbstractModule {
+
+		@Override
+		protected void configure() {
+			bindToExchange(binder(), Key.get(Message.class), IN_MESSAGE);
+			bindToExchange(binder(), Key.get(Endpoint.class), ENDPOINT);
+			bindToExchange(binder(), Key.get(Bus.class), BUS);
+			if (isServletAvailable())
+				ServletAccessors.bind(binder());
+		}
+
+		private static boolean isServletAvailable() {
+			try {
+				Class.forName("javax.servlet.http.HttpServletRequest", false,
+						CXFScopes.class.getClassLoader());
+				return true;
+			} catch (final ClassNotFoundException e) {
+				return false;
+			}
+		}
+	}
+
+	private static final ExchangeAccessor<Exchange> EXCHANGE = new ExchangeAccessor<Exchange>() {
+		@Override
+		public Exchange get(Exchange exchange) {
+			return exchange;
+		}
+	};
+
+	private static final ExchangeAccessor<ContinuationProvider> CONTINUATION_PROVIDER = new ExchangeAccessor<ContinuationProvider>() {
+		@Override
+		public ContinuationProvider get(Exchange exchange) {
+			final Object provider = exchange.getInMessage().get(
+					ContinuationProvider.class.getName());
+			if (provider == null)
+				throw new ProvisionException(
+						"Continuations are not supported by the transport");
+			return (ContinuationProvider) provider;
+		}
+	};
+
+	/** Reads the in message of the exchange */
+	public static final ExchangeAccessor<Message> IN_MESSAGE = new ExchangeAccessor<Message>() {
+		@Override
+		public Message get(Exchange exchange) {
+			return exchange.getInMessage();
+		}
+	};
+
+	/** Reads the endpoint of the exchange */
+	public static final ExchangeAccessor<Endpoint> ENDPOINT = new ExchangeAccessor<Endpoint>() {
+		@Override
+		public Endpoint get(Exchange exchange) {
+			return exchange.getEndpoint();
+		}
+	};
 
+	/** Reads the bus of the exchange */
+	public static final ExchangeAccessor<Bus> BUS = new ExchangeAccessor<Bus>() {
 		@Override
-		public Void get() {
-			throw new OutOfScopeException("This should never happen -- check "
-					+ CXFScopes.class + ".getKeyFromExchange(Exchange, Key)");
+		public Bus get(Exchange exchange) {
+			return exchange.getBus();
 		}
 	};
 
@@ -138,11 +216,43 @@ public class CXFScopes {
 	}
 
 	/**
-	 * This keys will be retrieved from exchange via
-	 * {@link #getKeyFromExchange(Exchange, Key)}
+	 * Provides a key bound with
+	 * {@link CXFScopes#bindToExchange(Binder, Key, ExchangeAccessor)}. The
+	 * provision is marked with the provider, so {@link CXFScopes#REQUEST}
+	 * reads the key through it from then on instead of storing the value.
 	 */
-	private static final Set<Key<?>> EXCHANGE_CONTEXT_KEYS = unmodifiableSet(new HashSet<Key<?>>(
-			Arrays.<Key<?>> asList(Key.get(Exchange.class))));
+	private static final class ExchangeProvider<T> implements Provider<T> {
+		private final ExchangeAccessor<T> accessor;
+
+		ExchangeProvider(ExchangeAccessor<T> accessor) {
+			this.accessor = accessor;
+		}
+
+		@Override
+		public T get() {
+			return accessor.get(readExchange(this));
+		}
+
+		T read(Exchange exchange) {
+			return accessor.get(exchange);
+		}
+
+		@Override
+		public String toString() {
+			return "ExchangeProvider[" + accessor + "]";
+		}
+	}
+
+	/** Slot of a scoped key in the slots of a server */
+	private static final class Slot {
+		final RequestScopeStore.Slots layout;
+		final int index;
+
+		Slot(RequestScopeStore.Slots layout, int index) {
+			this.layout = layout;
+			this.index = index;
+		}
+	}
 
 	/** Marker for @Nullable providers */
 	enum Marker {
@@ -154,49 +264,94 @@ public class CXFScopes {
 	 */
 	public static final Scope REQUEST = new Scope() {
 		public <T> Provider<T> scope(final Key<T> key, final Provider<T> creator) {
-			final String name = key.toString();
-			if (EXCHANGE_CONTEXT_KEYS.contains(key))
-				return new Provider<T>() {
-					public T get() {
-						final Exchange exchange = getExchange();
-						synchronized (exchange) {
-							return getKeyFromExchange(exchange, key);
+			return new Provider<T>() {
+				/** counters of the key in the metrics it was last used with */
+				private RequestScopeMetrics.KeyStats stats;
+
+				/** set once the key turned out to be read from the exchange */
+				private volatile ExchangeProvider<T> exchangeProvider;
+
+				/** slot of the key in the slots it was last used with */
+				private volatile Slot slot;
+
+				private int slotIn(RequestScopeStore store) {
+					Slot s = slot;
+					if (s == null || s.layout != store.getLayout()) {
+						s = new Slot(store.getLayout(), store.getLayout()
+								.indexOf(this));
+						slot = s;
+					}
+					return s.index;
+				}
+
+				public T get() {
+					final ExchangeProvider<T> ep = exchangeProvider;
+					if (ep != null)
+						return ep.read(getExchange());
+
+					final RequestScopeStore store = getStore();
+					final int slot = slotIn(store);
+					final RequestScopeMetrics metrics = store.getLayout()
+							.getMetrics();
+					RequestScopeMetrics.KeyStats stats = null;
+					if (metrics != null) {
+						stats = this.stats;
+						if (stats == null || !stats.of(metrics)) {
+							stats = metrics.forKey(key);
+							this.stats = stats;
 						}
 					}
 
-					@Override
-					public String toString() {
-						return String.format("%s[%s-ex]", creator, REQUEST);
-					}
-				};
-			else
-				return new Provider<T>() {
-					public T get() {
-						final Exchange exchange = getExchange();
-						synchronized (exchange) {
-
-							final Object obj = exchange.get(name);
-							if (NULL == obj)
-								return null;
-
-							@SuppressWarnings("unchecked")
-							T t = (T) obj;
-							if (t == null) {
-								t = creator.get();
-								if (!isCircularProxy(t)) {
-									exchange.put(name, (t != null) ? t : NULL);
-								}
-							}
-
-							return t;
-						}
+					final Object obj = store.get(slot);
+					if (obj != null && stats != null)
+						stats.hit();
+
+					if (NULL == obj)
+						return null;
+
+					if (obj != null) {
+						@SuppressWarnings("unchecked")
+						final T t = (T) obj;
+						return t;
 					}
 
-					@Override
-					public String toString() {
-						return String.format("%s[%s]", creator, REQUEST);
+					final Object event = FlightRecorderEvents.beginProvision();
+					final Object outer = markExchangeBacked(null);
+					final T t;
+					final Object backed;
+					try {
+						t = (stats != null) ? stats.provision(creator, store)
+								: creator.get();
+					} finally {
+						backed = markExchangeBacked(outer);
+					}
+					FlightRecorderEvents.endProvision(event, key);
+					if (backed != null) {
+						@SuppressWarnings("unchecked")
+						final ExchangeProvider<T> read = (ExchangeProvider<T>) backed;
+						exchangeProvider = read;
+						return t;
 					}
-				};
+					if (isCircularProxy(t))
+						return t;
+
+					// another thread might have won the race
+					final Object stored = store.putIfAbsent(slot,
+							(t != null) ? t : NULL);
+					if (NULL == stored)
+						return null;
+
+					@SuppressWarnings("unchecked")
+					final T result = (T) stored;
+					return result;
+				}
+
+				@Override
+				public String toString() {
+					return String.format(exchangeProvider != null ? "%s[%s-ex]"
+							: "%s[%s]", creator, REQUEST);
+				}
+			};
 		}
 
 		@Override
@@ -206,28 +361,62 @@ public class CXFScopes {
 	};
 
 	/**
-	 * Retrieve an existing instance from exchange.
+	 * Bind a key that is read from the current exchange.
 	 * <p>
-	 * This method will be called for all keys in {@link #EXCHANGE_CONTEXT_KEYS}
+	 * The key is bound in {@link #REQUEST} scope, so the usual scope checks
+	 * apply, but the value is read by the accessor every time it's provided
+	 * without being stored in the scope. Use it for values that are already
+	 * kept by the exchange or its messages, e.g. a tenant id stored on the
+	 * message by an early interceptor:
+	 *
+	 * <pre>
+	 * CXFScopes.bindToExchange(binder(), Key.get(String.class, Tenant.class),
+	 * 		new ExchangeAccessor&lt;String&gt;() {
+	 * 			public String get(Exchange exchange) {
+	 * 				return (String) exchange.getInMessage().get(TENANT_ID);
+	 * 			}
+	 * 		});
+	 * </pre>
+	 *
+	 * The accessor belongs to the binding, so each injector can read the same
+	 * key differently.
 	 *
-	 * @param exchange
-	 *            request exchange
+	 * @param binder
+	 *            binder to bind the key with
 	 * @param key
-	 *            key to retrieve
-	 * @return instance of T, never null
+	 *            key to bind
+	 * @param accessor
+	 *            reads the value from the exchange
 	 */
-	private static <T> T getKeyFromExchange(Exchange exchange, Key<T> key) {
-		checkArgument(key.getAnnotationType() == null,
-				"Annotated keys not allowed");
-		final Class<? super T> rt = key.getTypeLiteral().getRawType();
-
-		if (Exchange.class.equals(rt)) {
-			@SuppressWarnings("unchecked")
-			final T t = (T) exchange;
-			return t;
-		}
+	public static <T> void bindToExchange(Binder binder, Key<T> key,
+			ExchangeAccessor<T> accessor) {
+		binder.bind(key).toProvider(
+				new ExchangeProvider<T>(checkNotNull(accessor, "accessor")))
+				.in(REQUEST);
+	}
 
-		throw new UnsupportedOperationException("Key " + key);
+	/**
+	 * Wraps a callable so that it runs in the request scope of the current
+	 * exchange, even if it's called from a different thread.
+	 * <p>
+	 * Use it to access request scoped objects from a thread that completes a
+	 * suspended request. The returned callable takes the scope over from the
+	 * thread that created it, waiting for that thread to leave it, so it can
+	 * be submitted before the request is suspended. Call
+	 * <tt>Continuation.resume()</tt> after the callable returned: the resuming
+	 * thread re-enters the scope only once the callable has left it.
+	 * <p>
+	 * When a suspended request is resumed the same request scope is
+	 * re-entered on the resuming thread, so no wrapping is necessary there.
+	 *
+	 * @param callable
+	 *            code to run
+	 * @return callable running in the current request scope
+	 * @throws OutOfScopeException
+	 *             if called outside of a request scope
+	 */
+	public static <T> Callable<T> continueRequest(Callable<T> callable) {
+		return GuiceInterceptorWrapper.continueRequest(callable);
 	}
 
 	/**
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import org.apache.cxf.message.Exchange;
+
+/**
+ * Reads a value of an exchange-backed key.
+ * <p>
+ * Keys registered with
+ * {@link CXFScopes#bindToExchange(com.google.inject.Binder, com.google.inject.Key, ExchangeAccessor)}
+ * are read from the current exchange every time they are provided, they are
+ * not stored in the request scope. Accessors are shared by all exchanges and
+ * should not keep any state.
+ */
+public interface ExchangeAccessor<T> {
+
+	/**
+	 * @param exchange
+	 *            current exchange
+	 * @return value for the exchange
+	 */
+	T get(Exchange exchange);
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.inject.internal.util.$Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cxf.message.Exchange;
+
+/**
+ * Executor running child tasks of an exchange in its request scope.
+ * <p>
+ * Tasks are queued and handed to the underlying executor by at most
+ * <tt>parallelism</tt> workers, so a single request can't take over the
+ * shared pool. Children share the scope of the parent, they don't take it
+ * over like {@link CXFScopes#continueRequest(Callable)} does. Once the
+ * invocation that created the executor completes, the executor is shut down
+ * and unfinished children are cancelled.
+ */
+final class FanOutExecutor extends AbstractExecutorService {
+
+	/**
+	 * Shut down the executor of an exchange, if one was created.
+	 *
+	 * @param exchange
+	 *            completed exchange
+	 */
+	static void completed(Exchange exchange) {
+		final FanOutExecutor executor = exchange.get(FanOutExecutor.class);
+		if (executor != null)
+			executor.shutdownNow();
+	}
+
+	/** Future removing itself from the children once done */
+	private final class Child<T> extends FutureTask<T> {
+		Child(Callable<T> callable) {
+			super(callable);
+		}
+
+		Child(Runnable runnable, T value) {
+			super(runnable, value);
+		}
+
+		@Override
+		protected void done() {
+			children.remove(this);
+		}
+	}
+
+	/** Runs queued tasks until the queue is empty */
+	private final Runnable worker = new Runnable() {
+		@Override
+		public void run() {
+			boolean drained = false;
+			try {
+				do {
+					Runnable task;
+					while ((task = pending.poll()) != null)
+						GuiceInterceptorWrapper.runInRequest(task, exchange);
+					running.decrementAndGet();
+					// a task may have been queued while the limit was reached
+				} while (!pending.isEmpty() && tryStart());
+				drained = true;
+			} finally {
+				if (!drained) {
+					running.decrementAndGet();
+					try {
+						schedule();
+					} catch (final RejectedExecutionException e) {
+						// left for shutdownNow() when the exchange completes
+					}
+				}
+				if (shutdown)
+					signalTermination();
+			}
+		}
+	};
+
+	private final Executor executor;
+	private final Exchange exchange;
+	private final int parallelism;
+
+	private final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicInteger running = new AtomicInteger();
+	private final Set<Future<?>> children = Collections
+			.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+
+	private volatile boolean shutdown;
+
+	FanOutExecutor(Executor executor, Exchange exchange, int parallelism) {
+		checkArgument(parallelism > 0, "parallelism must be positive");
+		this.executor = executor;
+		this.exchange = exchange;
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+		return track(new Child<T>(callable));
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+		return track(new Child<T>(runnable, value));
+	}
+
+	private <T> Child<T> track(Child<T> child) {
+		children.add(child);
+		return child;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (shutdown)
+			reject(command);
+		pending.add(command);
+		try {
+			schedule();
+		} catch (final RejectedExecutionException e) {
+			if (pending.remove(command))
+				reject(command);
+		}
+		if (shutdown && pending.remove(command))
+			reject(command);
+	}
+
+	private void reject(Runnable command) {
+		if (command instanceof Future)
+			children.remove(command);
+		throw new RejectedExecutionException("Exchange already completed");
+	}
+
+	private boolean tryStart() {
+		for (;;) {
+			final int count = running.get();
+			if (count >= parallelism)
+				return false;
+			if (running.compareAndSet(count, count + 1))
+				return true;
+		}
+	}
+
+	/**
+	 * Start a worker unless the parallelism limit is reached.
+	 */
+	private void schedule() {
+		if (pending.isEmpty() || !tryStart())
+			return;
+		try {
+			executor.execute(worker);
+		} catch (final RejectedExecutionException e) {
+			running.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private synchronized void signalTermination() {
+		notifyAll();
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		signalTermination();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown = true;
+		final List<Runnable> dropped = new ArrayList<Runnable>();
+		Runnable task;
+		while ((task = pending.poll()) != null)
+			dropped.add(task);
+		for (final Future<?> child : children)
+			child.cancel(true);
+		signalTermination();
+		return dropped;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return shutdown && running.get() == 0 && pending.isEmpty();
+	}
+
+	@Override
+	public synchronized boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		final long deadline = System.nanoTime() + remaining;
+		while (!isTerminated()) {
+			if (remaining <= 0)
+				return false;
+			NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.cxf.message.Exchange;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+
+/**
+ * Provides the {@link FanOut} executor of the current exchange.
+ * <p>
+ * Resources can use it to split the work of a request into tasks running in
+ * parallel, the tasks have access to the request scope of the exchange:
+ *
+ * <pre>
+ * public class BookResource {
+ * 	&#064;Inject
+ * 	&#064;FanOut
+ * 	private Provider&lt;ExecutorService&gt; executor;
+ *
+ * 	&#064;GET
+ * 	public Shelf get() throws Exception {
+ * 		final Future&lt;Books&gt; books = executor.get().submit(findBooks);
+ * 		final Future&lt;Authors&gt; authors = executor.get().submit(findAuthors);
+ * 		return new Shelf(books.get(), authors.get());
+ * 	}
+ * }
+ * </pre>
+ *
+ * Wrap it in an <tt>ExecutorCompletionService</tt> to consume results in
+ * completion order. The executor must be bound in the request scope, it's
+ * shut down and its unfinished tasks are cancelled when the resource
+ * invocation completes. A suspended request keeps its tasks running until
+ * the resumed invocation completes.
+ */
+public class FanOutExecutorProvider implements Provider<ExecutorService> {
+
+	/**
+	 * Name of the <tt>Executor</tt> binding running the tasks of all
+	 * exchanges
+	 */
+	public static final String EXECUTOR = "guice-cxf.fan-out";
+
+	/**
+	 * Name of the <tt>int</tt> binding limiting the number of tasks running
+	 * in parallel for a single exchange
+	 */
+	public static final String PARALLELISM = "guice-cxf.fan-out.parallelism";
+
+	private final Executor executor;
+	private final int parallelism;
+	private final Provider<Exchange> exchange;
+
+	@Inject
+	public FanOutExecutorProvider(@Named(EXECUTOR) Executor executor,
+			@Named(PARALLELISM) int parallelism, Provider<Exchange> exchange) {
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.exchange = exchange;
+	}
+
+	@Override
+	public ExecutorService get() {
+		final Exchange ex = exchange.get();
+		final FanOutExecutor service = new FanOutExecutor(executor, ex,
+				parallelism);
+		ex.put(FanOutExecutor.class, service);
+		return service;
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.message.Message;
+
+/**
+ * Installs a {@link GuiceInterceptorWrapper} on a server.
+ * <p>
+ * The wrapped interceptor is removed from the service interceptors and the
+ * wrapper is added to the endpoint in its place, so the chain is modified
+ * once when the server is created instead of on every message.
+ */
+public class GuiceInterceptorFeature extends AbstractFeature {
+
+	private final GuiceInterceptorWrapper wrapper;
+
+	public GuiceInterceptorFeature(GuiceInterceptorWrapper wrapper) {
+		this.wrapper = wrapper;
+	}
+
+	@Override
+	public void initialize(Server server, Bus bus) {
+		final Endpoint endpoint = server.getEndpoint();
+		final Class<?> delegate = wrapper.getDelegateClass();
+
+		final List<Interceptor<? extends Message>> interceptors = endpoint
+				.getService().getInInterceptors();
+		final List<Interceptor<? extends Message>> replaced = new ArrayList<Interceptor<? extends Message>>();
+		for (final Interceptor<? extends Message> interceptor : interceptors) {
+			if (delegate.isInstance(interceptor))
+				replaced.add(interceptor);
+		}
+		interceptors.removeAll(replaced);
+
+		endpoint.getInInterceptors().add(wrapper);
+	}
+
+}
@@ -15,61 +15,124 @@
  */
 package com.google.code.inject.jaxrs.scope;
 
-import static com.google.inject.internal.util.$Preconditions.checkState;
 import static java.lang.Thread.currentThread;
 import static java.util.Collections.singleton;
 import static org.apache.cxf.phase.Phase.INVOKE;
 
-import java.util.Iterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.continuations.SuspendedInvocationException;
 import org.apache.cxf.interceptor.Fault;
-import org.apache.cxf.interceptor.Interceptor;
 import org.apache.cxf.interceptor.InterceptorChain;
+import org.apache.cxf.interceptor.InterceptorChain.State;
 import org.apache.cxf.interceptor.ServiceInvokerInterceptor;
 import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.phase.AbstractPhaseInterceptor;
 import org.apache.cxf.phase.PhaseInterceptor;
 
+import com.google.code.inject.jaxrs.internal.FlightRecorderEvents;
+import com.google.inject.Inject;
 import com.google.inject.OutOfScopeException;
+import com.google.inject.name.Named;
 
+/**
+ * Runs the wrapped interceptor in the scope of the current exchange.
+ * <p>
+ * The wrapper has to replace the wrapped interceptor in the chain, install it
+ * with a {@link GuiceInterceptorFeature}.
+ */
 public class GuiceInterceptorWrapper extends AbstractPhaseInterceptor<Message> {
 
+	/**
+	 * Scope of the exchange handled by a thread, reused for every exchange
+	 * the thread enters.
+	 */
 	private final static class Context {
-		final Exchange exchange;
-		volatile Thread owner;
+		Exchange exchange;
+		RequestScopeStore store;
+		/** set when a provision read the exchange directly */
+		Object exchangeProvider;
 
-		private Context(Exchange exchange) {
+		void handle(PhaseInterceptor<Message> delegate, Message m,
+				Exchange exchange, RequestScopeStore.Slots slots,
+				AllocationMetrics allocations) {
+			final Exchange previousExchange = this.exchange;
+			final RequestScopeStore previousStore = this.store;
+			final RequestScopeStore store = (previousExchange == exchange) ? previousStore
+					: RequestScopeStore.of(exchange, slots);
+			final Thread owner = currentThread();
+			final boolean acquired = store.acquire(owner);
 			this.exchange = exchange;
+			this.store = store;
+			final boolean sampled = allocations != null && allocations.sample();
+			final Object event = FlightRecorderEvents.beginScope();
+			try {
+				if (!sampled) {
+					delegate.handleMessage(m);
+				} else {
+					final long before = AllocationMetrics.allocatedBytes();
+					delegate.handleMessage(m);
+					allocations.record(exchange,
+							AllocationMetrics.allocatedBytes() - before);
+				}
+			} finally {
+				FlightRecorderEvents.endScope(event, exchange);
+				if (acquired)
+					store.release(owner);
+				this.exchange = previousExchange;
+				this.store = previousStore;
+			}
 		}
 
-		<T> T call(Callable<T> callable) throws Exception {
-			final Thread oldOwner = owner;
-			final Thread newOwner = currentThread();
-			checkState(oldOwner == null || oldOwner == newOwner,
-					"Trying to transfer exchange scope but original scope is still active");
-			owner = newOwner;
-			final Context previous = localContext.get();
-			localContext.set(this);
+		<T> T call(Callable<T> callable, Exchange exchange) throws Exception {
+			final Exchange previousExchange = this.exchange;
+			final RequestScopeStore previousStore = this.store;
+			final RequestScopeStore store = (previousExchange == exchange) ? previousStore
+					: RequestScopeStore.attached(exchange);
+			final Thread owner = currentThread();
+			final boolean acquired = store.acquire(owner);
+			this.exchange = exchange;
+			this.store = store;
 			try {
 				return callable.call();
 			} finally {
-				owner = oldOwner;
-				localContext.set(previous);
+				if (acquired)
+					store.release(owner);
+				this.exchange = previousExchange;
+				this.store = previousStore;
 			}
 		}
 
-		public Exchange getExchange() {
-			return exchange;
+		void share(Runnable task, Exchange exchange) {
+			final Exchange previousExchange = this.exchange;
+			final RequestScopeStore previousStore = this.store;
+			this.store = (previousExchange == exchange) ? previousStore
+					: RequestScopeStore.attached(exchange);
+			this.exchange = exchange;
+			try {
+				task.run();
+			} finally {
+				this.exchange = previousExchange;
+				this.store = previousStore;
+			}
 		}
 	}
 
-	private static final ThreadLocal<Context> localContext = new ThreadLocal<Context>();
+	private static final ThreadLocal<Context> localContext = new ThreadLocal<Context>() {
+		@Override
+		protected Context initialValue() {
+			return new Context();
+		}
+	};
 
 	private static Context getContext() {
 		final Context context = localContext.get();
-		if (context == null) {
+		if (context.exchange == null) {
 			throw new OutOfScopeException(
 					"Cannot access scoped object. Either we"
 							+ " are not currently inside a exchange, or you may"
@@ -81,11 +144,93 @@ public class GuiceInterceptorWrapper extends AbstractPhaseInterceptor<Message> {
 	}
 
 	static Exchange getExchange() {
-		return getContext().getExchange();
+		return getContext().exchange;
+	}
+
+	static RequestScopeStore getStore() {
+		return getContext().store;
+	}
+
+	/**
+	 * Read the current exchange for an exchange-backed key, marking the
+	 * provision with the provider that read it so that the scope doesn't
+	 * store its value.
+	 */
+	static Exchange readExchange(Object exchangeProvider) {
+		final Context context = getContext();
+		context.exchangeProvider = exchangeProvider;
+		return context.exchange;
 	}
 
+	/**
+	 * Set the exchange-backed mark of the current provision.
+	 *
+	 * @return previous mark
+	 */
+	static Object markExchangeBacked(Object exchangeProvider) {
+		final Context context = localContext.get();
+		final Object previous = context.exchangeProvider;
+		context.exchangeProvider = exchangeProvider;
+		return previous;
+	}
+
+	/**
+	 * Wrap a callable so that it runs in the scope of the current exchange.
+	 *
+	 * @see CXFScopes#continueRequest(Callable)
+	 */
+	static <T> Callable<T> continueRequest(final Callable<T> callable) {
+		final Exchange exchange = getExchange();
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return localContext.get().call(callable, exchange);
+			}
+		};
+	}
+
+	/**
+	 * Run a task in the scope of an exchange while the scope is active in a
+	 * different thread. The task doesn't take over the scope.
+	 *
+	 * @see FanOutExecutor
+	 */
+	static void runInRequest(Runnable task, Exchange exchange) {
+		localContext.get().share(task, exchange);
+	}
+
+	/**
+	 * Outcome of an invocation dispatched to the {@link #DISPATCHER}
+	 */
+	private static final class Dispatch {
+		volatile RuntimeException failure;
+	}
+
+	/**
+	 * @param exchange
+	 *            current exchange
+	 * @return <tt>true</tt> if the invocation of the exchange was dispatched to
+	 *         the {@link #DISPATCHER}, its request is already suspended
+	 */
+	public static boolean isDispatched(Exchange exchange) {
+		return exchange.get(Dispatch.class.getName()) != null;
+	}
+
+	/**
+	 * Name of the optional <tt>Executor</tt> binding used to run invocations
+	 * off the transport thread.
+	 */
+	public static final String DISPATCHER = "guice-cxf.dispatcher";
+
 	private final PhaseInterceptor<Message> delegate;
 
+	/** slots of the scoped keys used by this server */
+	private final RequestScopeStore.Slots slots = new RequestScopeStore.Slots();
+
+	private Executor dispatcher;
+
+	private AllocationMetrics allocations;
+
 	public GuiceInterceptorWrapper() {
 		this(new ServiceInvokerInterceptor());
 	}
@@ -96,35 +241,149 @@ public class GuiceInterceptorWrapper extends AbstractPhaseInterceptor<Message> {
 		this.delegate = delegate;
 	}
 
+	/**
+	 * Run invocations on the given executor.
+	 * <p>
+	 * The request is suspended with a CXF continuation while the invocation
+	 * runs, so the transport thread is released. The request scope moves to
+	 * the executor thread and back to the thread resuming the request.
+	 * Resources invoked this way must not suspend the request themselves.
+	 * <p>
+	 * If the transport doesn't support continuations the invocation runs on
+	 * the transport thread.
+	 *
+	 * @param dispatcher
+	 *            executor to run invocations on
+	 */
+	@Inject(optional = true)
+	public void setDispatcher(@Named(DISPATCHER) Executor dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Collect provisioning metrics of the request scope of this server.
+	 *
+	 * @param metrics
+	 *            metrics bound in the injector of the server
+	 */
+	@Inject(optional = true)
+	public void setScopeMetrics(RequestScopeMetrics metrics) {
+		slots.setMetrics(metrics);
+	}
+
+	/**
+	 * Sample the bytes allocated by invocations of this server.
+	 *
+	 * @param allocations
+	 *            metrics bound in the injector of the server
+	 */
+	@Inject(optional = true)
+	public void setAllocationMetrics(AllocationMetrics allocations) {
+		this.allocations = allocations;
+	}
+
+	Class<?> getDelegateClass() {
+		return delegate.getClass();
+	}
+
 	@Override
 	public void handleMessage(final Message m) throws Fault {
-		// remove delegate from chain
-		final InterceptorChain chain = m.getInterceptorChain();
-		final Iterator<Interceptor<? extends Message>> it = chain.iterator();
-		while (it.hasNext()) {
-			final Interceptor<? extends Message> next = it.next();
-			if (delegate.getClass().isInstance(next)) {
-				chain.remove(next);
+		final Context context = localContext.get();
+		final Exchange exchange = (context.exchange != null) ? context.exchange
+				: m.getExchange();
+
+		if (dispatcher != null && context.exchange == null) {
+			final ContinuationProvider provider = (ContinuationProvider) m
+					.get(ContinuationProvider.class.getName());
+			if (provider != null) {
+				dispatch(m, exchange, provider.getContinuation());
+				return;
 			}
 		}
 
-		// process in scope
-		final Context previous = localContext.get();
-		final Exchange exchange = (previous != null) ? previous.getExchange()
-				: m.getExchange();
+		if (context.exchange != null)
+			context.handle(delegate, m, exchange, slots, allocations);
+		else
+			invoke(context, m, exchange);
+	}
 
+	/**
+	 * Called once the invocation of an exchange completed, unless it was
+	 * suspended.
+	 */
+	private void completed(Exchange exchange) {
+		FanOutExecutor.completed(exchange);
+		final RequestScopeMetrics metrics = slots.getMetrics();
+		if (metrics != null)
+			metrics.completed(exchange);
+	}
+
+	private void invoke(Context context, Message m, Exchange exchange) {
 		try {
-			new Context(exchange).call(new Callable<Void>() {
-				@Override
-				public Void call() throws Exception {
-					delegate.handleMessage(m);
-					return null;
+			context.handle(delegate, m, exchange, slots, allocations);
+		} catch (final SuspendedInvocationException e) {
+			throw e;
+		} catch (final RuntimeException e) {
+			completed(exchange);
+			throw e;
+		}
+		final InterceptorChain chain = m.getInterceptorChain();
+		if (chain == null || chain.getState() != State.SUSPENDED)
+			completed(exchange);
+	}
+
+	private void dispatch(final Message m, final Exchange exchange,
+			final Continuation continuation) {
+		final Dispatch completed = (Dispatch) exchange.remove(Dispatch.class
+				.getName());
+		if (completed != null) {
+			// resumed after the dispatched invocation finished
+			if (completed.failure != null)
+				throw completed.failure;
+			return;
+		}
+
+		final Dispatch dispatch = new Dispatch();
+		exchange.put(Dispatch.class.getName(), dispatch);
+
+		final Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					localContext.get().handle(delegate, m, exchange, slots,
+							allocations);
+				} catch (final RuntimeException e) {
+					dispatch.failure = e;
+				} finally {
+					completed(exchange);
+					continuation.resume();
 				}
-			});
-		} catch (final Fault e) {
+			}
+		};
+
+		final boolean suspended;
+		try {
+			suspended = continuation.suspend(0);
+		} catch (final SuspendedInvocationException e) {
+			execute(task, dispatch, continuation);
 			throw e;
-		} catch (final Exception e) {
-			throw new Fault(e);
+		}
+
+		if (suspended) {
+			execute(task, dispatch, continuation);
+		} else {
+			exchange.remove(Dispatch.class.getName());
+			invoke(localContext.get(), m, exchange);
+		}
+	}
+
+	private void execute(Runnable task, Dispatch dispatch,
+			Continuation continuation) {
+		try {
+			dispatcher.execute(task);
+		} catch (final RejectedExecutionException e) {
+			dispatch.failure = new Fault(e);
+			continuation.resume();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static org.apache.cxf.jaxrs.utils.JAXRSUtils.createContextValue;
+
+import org.apache.cxf.message.Message;
+
+/**
+ * Base of the @Context views served by {@link CXFScopes.Module}.
+ * <p>
+ * Views answer what they can straight from the message and create the CXF
+ * implementation only when it's needed.
+ */
+abstract class LazyContext<T> {
+
+	protected final Message message;
+	private final Class<T> type;
+
+	/** created on first use; racing threads create equivalent instances */
+	private T delegate;
+
+	LazyContext(Message message, Class<T> type) {
+		this.message = message;
+		this.type = type;
+	}
+
+	protected final T delegate() {
+		T d = delegate;
+		if (d == null)
+			delegate = d = createContextValue(message, type, type);
+		return d;
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static java.lang.String.CASE_INSENSITIVE_ORDER;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.cxf.message.Message;
+
+/**
+ * Reads single valued headers from the protocol headers, the full header map
+ * is only copied when it's needed.
+ */
+class LazyHttpHeaders extends LazyContext<HttpHeaders> implements
+		HttpHeaders {
+
+	LazyHttpHeaders(Message message) {
+		super(message, HttpHeaders.class);
+	}
+
+	@Override
+	public List<String> getRequestHeader(String name) {
+		@SuppressWarnings("unchecked")
+		final Map<String, List<String>> headers = (Map<String, List<String>>) message
+				.get(Message.PROTOCOL_HEADERS);
+		if (headers == null)
+			return emptyList();
+
+		final List<String> values = lookup(headers, name);
+		if (values == null || values.isEmpty() || values.get(0) == null)
+			return emptyList();
+
+		// values that would be split or unquoted are left to CXF
+		if (values.size() == 1 && !COOKIE.equalsIgnoreCase(name)) {
+			final String value = values.get(0);
+			if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+				return singletonList(value.trim());
+		}
+		return delegate().getRequestHeader(name);
+	}
+
+	private static List<String> lookup(Map<String, List<String>> headers,
+			String name) {
+		final List<String> values = headers.get(name);
+		if (values != null || isCaseInsensitive(headers))
+			return values;
+
+		for (final Map.Entry<String, List<String>> e : headers.entrySet()) {
+			if (name.equalsIgnoreCase(e.getKey()))
+				return e.getValue();
+		}
+		return null;
+	}
+
+	private static boolean isCaseInsensitive(Map<String, ?> headers) {
+		return headers instanceof SortedMap
+				&& ((SortedMap<String, ?>) headers).comparator() == CASE_INSENSITIVE_ORDER;
+	}
+
+	@Override
+	public MultivaluedMap<String, String> getRequestHeaders() {
+		return delegate().getRequestHeaders();
+	}
+
+	@Override
+	public List<MediaType> getAcceptableMediaTypes() {
+		return delegate().getAcceptableMediaTypes();
+	}
+
+	@Override
+	public List<Locale> getAcceptableLanguages() {
+		return delegate().getAcceptableLanguages();
+	}
+
+	@Override
+	public MediaType getMediaType() {
+		return delegate().getMediaType();
+	}
+
+	@Override
+	public Locale getLanguage() {
+		return delegate().getLanguage();
+	}
+
+	@Override
+	public Map<String, Cookie> getCookies() {
+		return delegate().getCookies();
+	}
+
+}
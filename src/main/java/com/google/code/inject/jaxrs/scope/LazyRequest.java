@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Variant;
+
+import org.apache.cxf.message.Message;
+
+class LazyRequest extends LazyContext<Request> implements Request {
+
+	LazyRequest(Message message) {
+		super(message, Request.class);
+	}
+
+	@Override
+	public String getMethod() {
+		return message.get(Message.HTTP_REQUEST_METHOD).toString();
+	}
+
+	@Override
+	public Variant selectVariant(List<Variant> variants) {
+		return delegate().selectVariant(variants);
+	}
+
+	@Override
+	public ResponseBuilder evaluatePreconditions(EntityTag eTag) {
+		return delegate().evaluatePreconditions(eTag);
+	}
+
+	@Override
+	public ResponseBuilder evaluatePreconditions(Date lastModified) {
+		return delegate().evaluatePreconditions(lastModified);
+	}
+
+	@Override
+	public ResponseBuilder evaluatePreconditions(Date lastModified,
+			EntityTag eTag) {
+		return delegate().evaluatePreconditions(lastModified, eTag);
+	}
+
+	@Override
+	public ResponseBuilder evaluatePreconditions() {
+		return delegate().evaluatePreconditions();
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import java.security.Principal;
+
+import javax.ws.rs.core.SecurityContext;
+
+import org.apache.cxf.message.Message;
+
+class LazySecurityContext extends LazyContext<SecurityContext> implements
+		SecurityContext {
+
+	LazySecurityContext(Message message) {
+		super(message, SecurityContext.class);
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return delegate().getUserPrincipal();
+	}
+
+	@Override
+	public boolean isUserInRole(String role) {
+		return delegate().isUserInRole(role);
+	}
+
+	@Override
+	public boolean isSecure() {
+		return delegate().isSecure();
+	}
+
+	@Override
+	public String getAuthenticationScheme() {
+		return delegate().getAuthenticationScheme();
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import java.net.URI;
+import java.util.List;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.cxf.message.Message;
+
+class LazyUriInfo extends LazyContext<UriInfo> implements UriInfo {
+
+	LazyUriInfo(Message message) {
+		super(message, UriInfo.class);
+	}
+
+	@Override
+	public String getPath() {
+		return delegate().getPath();
+	}
+
+	@Override
+	public String getPath(boolean decode) {
+		return delegate().getPath(decode);
+	}
+
+	@Override
+	public List<PathSegment> getPathSegments() {
+		return delegate().getPathSegments();
+	}
+
+	@Override
+	public List<PathSegment> getPathSegments(boolean decode) {
+		return delegate().getPathSegments(decode);
+	}
+
+	@Override
+	public URI getRequestUri() {
+		return delegate().getRequestUri();
+	}
+
+	@Override
+	public UriBuilder getRequestUriBuilder() {
+		return delegate().getRequestUriBuilder();
+	}
+
+	@Override
+	public URI getAbsolutePath() {
+		return delegate().getAbsolutePath();
+	}
+
+	@Override
+	public UriBuilder getAbsolutePathBuilder() {
+		return delegate().getAbsolutePathBuilder();
+	}
+
+	@Override
+	public URI getBaseUri() {
+		return delegate().getBaseUri();
+	}
+
+	@Override
+	public UriBuilder getBaseUriBuilder() {
+		return delegate().getBaseUriBuilder();
+	}
+
+	@Override
+	public MultivaluedMap<String, String> getPathParameters() {
+		return delegate().getPathParameters();
+	}
+
+	@Override
+	public MultivaluedMap<String, String> getPathParameters(boolean decode) {
+		return delegate().getPathParameters(decode);
+	}
+
+	@Override
+	public MultivaluedMap<String, String> getQueryParameters() {
+		return delegate().getQueryParameters();
+	}
+
+	@Override
+	public MultivaluedMap<String, String> getQueryParameters(boolean decode) {
+		return delegate().getQueryParameters(decode);
+	}
+
+	@Override
+	public List<String> getMatchedURIs() {
+		return delegate().getMatchedURIs();
+	}
+
+	@Override
+	public List<String> getMatchedURIs(boolean decode) {
+		return delegate().getMatchedURIs(decode);
+	}
+
+	@Override
+	public List<Object> getMatchedResources() {
+		return delegate().getMatchedResources();
+	}
+
+}
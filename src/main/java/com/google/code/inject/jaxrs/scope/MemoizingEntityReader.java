@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static org.apache.cxf.jaxrs.utils.JAXRSUtils.getProviderConsumeTypes;
+import static org.apache.cxf.phase.PhaseInterceptorChain.getCurrentMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.cxf.jaxrs.provider.AbstractConfigurableProvider;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+
+import com.google.code.inject.jaxrs.scope.RequestEntity.Memo;
+
+/**
+ * Reader returning the {@link RequestEntity} if it was already read in the
+ * current exchange.
+ * <p>
+ * Wraps a reader registered with the server and consumes the same media
+ * types, so it's selected in its place. CXF prefers readers declared for a
+ * more specific type, so the wrapper is only selected instead of untyped
+ * readers. Entities it reads are kept for the {@link RequestEntity}. Readers
+ * are only wrapped on servers configured with
+ * <tt>serve().withMemoizedRequestEntity()</tt>.
+ */
+@Provider
+public class MemoizingEntityReader extends AbstractConfigurableProvider
+		implements MessageBodyReader<Object> {
+
+	private final MessageBodyReader<Object> delegate;
+
+	@SuppressWarnings("unchecked")
+	public MemoizingEntityReader(MessageBodyReader<?> delegate) {
+		this.delegate = (MessageBodyReader<Object>) delegate;
+
+		final List<String> consumes = new ArrayList<String>();
+		for (final MediaType type : getProviderConsumeTypes(delegate))
+			consumes.add(type.toString());
+		setConsumeMediaTypes(consumes);
+	}
+
+	private static Exchange currentExchange() {
+		final Message m = getCurrentMessage();
+		return (m != null) ? m.getExchange() : null;
+	}
+
+	@Override
+	public boolean isReadable(Class<?> type, Type genericType,
+			Annotation[] annotations, MediaType mediaType) {
+		final Exchange exchange = currentExchange();
+		if (exchange != null) {
+			final Memo memo = RequestEntity.getMemo(exchange);
+			if (memo != null && type.isInstance(memo.entity))
+				return true;
+		}
+		return delegate.isReadable(type, genericType, annotations, mediaType);
+	}
+
+	@Override
+	public Object readFrom(Class<Object> type, Type genericType,
+			Annotation[] annotations, MediaType mediaType,
+			MultivaluedMap<String, String> httpHeaders, InputStream entityStream)
+			throws IOException, WebApplicationException {
+		final Exchange exchange = currentExchange();
+		if (exchange == null)
+			return delegate.readFrom(type, genericType, annotations, mediaType,
+					httpHeaders, entityStream);
+
+		final Memo memo = RequestEntity.getMemo(exchange);
+		if (memo != null && type.isInstance(memo.entity))
+			return memo.entity;
+
+		final Object entity = delegate.readFrom(type, genericType,
+				annotations, mediaType, httpHeaders, entityStream);
+		RequestEntity.memoize(exchange, entity);
+		return entity;
+	}
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+/**
+ * Bytes allocated by sampled invocations of a resource method, see
+ * {@link AllocationMetrics}.
+ * <p>
+ * Percentiles cover the invocations sampled in the last minute.
+ */
+public interface OperationAllocationStatistics {
+
+	/**
+	 * @return resource class and method name
+	 */
+	String getOperation();
+
+	/**
+	 * @return number of sampled invocations
+	 */
+	long getSamples();
+
+	/**
+	 * @return bytes allocated by all sampled invocations
+	 */
+	long getTotalBytes();
+
+	double getMeanBytes();
+
+	long getBytes50thPercentile();
+
+	long getBytes95thPercentile();
+
+	long getBytes99thPercentile();
+
+	long getMaxBytes();
+
+}
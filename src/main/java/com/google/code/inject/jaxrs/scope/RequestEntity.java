@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM_TYPE;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.UNSUPPORTED_MEDIA_TYPE;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.MessageBodyReader;
+
+import org.apache.cxf.jaxrs.impl.MetadataMap;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.jaxrs.model.Parameter;
+import org.apache.cxf.jaxrs.model.ParameterType;
+import org.apache.cxf.jaxrs.provider.ProviderFactory;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+
+/**
+ * Request entity read once per exchange.
+ * <p>
+ * The first call to {@link #get(Class)} selects a <tt>MessageBodyReader</tt>
+ * and reads the request body, every later call in the same exchange returns
+ * the same instance. Request scoped services can inject it to look at the
+ * body without reading it twice. Request handlers and interceptors run before
+ * the request scope is entered, they can get it from the message:
+ *
+ * <pre>
+ * public Response handleRequest(Message m, ClassResourceInfo resourceClass) {
+ * 	final Order order = RequestEntity.of(m).get(Order.class);
+ * 	// [...]
+ * }
+ * </pre>
+ *
+ * With <tt>serve().withMemoizedRequestEntity()</tt> the resource method gets
+ * the same instance for its entity parameter if it's read by an untyped
+ * (<tt>MessageBodyReader&lt;Object&gt;</tt>) provider registered with the
+ * <tt>CXFServerModule</tt>, e.g. the JSON or JAXB providers, see
+ * {@link MemoizingEntityReader}. Otherwise, and with typed readers, the body is
+ * read again.
+ * <p>
+ * When the entity is read before the operation is selected, or for an
+ * operation that reads it again, the body is buffered in memory so it can be
+ * read twice. At most {@link #DEFAULT_BUFFER_LIMIT} bytes are buffered, larger
+ * bodies are rejected with a 413 response. Set the {@link #BUFFER_LIMIT}
+ * property of the endpoint, e.g. through
+ * <tt>JAXRSServerFactoryBean.getProperties(true)</tt>, to change the limit.
+ */
+public class RequestEntity {
+
+	/**
+	 * Endpoint property limiting the bytes of a buffered body
+	 */
+	public static final String BUFFER_LIMIT = "guice-cxf.request-entity.buffer-limit";
+
+	/**
+	 * Bytes of a body buffered at most unless {@link #BUFFER_LIMIT} is set
+	 */
+	public static final long DEFAULT_BUFFER_LIMIT = 1024 * 1024;
+
+	/** Request Entity Too Large, not in JAX-RS 1.1 <tt>Status</tt> */
+	private static final int REQUEST_ENTITY_TOO_LARGE = 413;
+
+	private static final Annotation[] NO_ANNOTATIONS = {};
+
+	/** Entity read in an exchange */
+	static final class Memo {
+		final Object entity;
+
+		private Memo(Object entity) {
+			this.entity = entity;
+		}
+	}
+
+	static Memo getMemo(Exchange exchange) {
+		return (Memo) exchange.get(Memo.class.getName());
+	}
+
+	static void memoize(Exchange exchange, Object entity) {
+		if (getMemo(exchange) == null)
+			exchange.put(Memo.class.getName(), new Memo(entity));
+	}
+
+	/**
+	 * @param message
+	 *            in message of the exchange
+	 * @return request entity of the exchange
+	 */
+	public static RequestEntity of(Message message) {
+		return new RequestEntity(message);
+	}
+
+	/**
+	 * @return index of the entity parameter of the operation, or -1 if it has
+	 *         none or it's not known yet
+	 */
+	private static int bodyParameterIndex(OperationResourceInfo ori) {
+		if (ori != null)
+			for (final Parameter p : ori.getParameters())
+				if (p.getType() == ParameterType.REQUEST_BODY)
+					return p.getIndex();
+		return -1;
+	}
+
+	private static long bufferLimit(Message message) {
+		final Object limit = message.getContextualProperty(BUFFER_LIMIT);
+		if (limit == null)
+			return DEFAULT_BUFFER_LIMIT;
+		return (limit instanceof Number) ? ((Number) limit).longValue() : Long
+				.parseLong(limit.toString());
+	}
+
+	private static byte[] buffer(InputStream in, long limit)
+			throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] chunk = new byte[4096];
+		int n;
+		while ((n = in.read(chunk)) != -1) {
+			if (out.size() + n > limit)
+				throw new WebApplicationException(REQUEST_ENTITY_TOO_LARGE);
+			out.write(chunk, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private final Message message;
+
+	RequestEntity(Message message) {
+		this.message = message;
+	}
+
+	/**
+	 * @param type
+	 *            entity type
+	 * @return the request entity
+	 * @throws IllegalStateException
+	 *             if the entity was already read as a different type
+	 */
+	public <T> T get(Class<T> type) {
+		return get(type, type);
+	}
+
+	/**
+	 * @param type
+	 *            entity type
+	 * @param genericType
+	 *            generic entity type
+	 * @return the request entity
+	 * @throws IllegalStateException
+	 *             if the entity was already read as a different type
+	 * @throws WebApplicationException
+	 *             if the body can't be read, or is too large to be buffered
+	 */
+	public <T> T get(Class<T> type, Type genericType) {
+		final Exchange exchange = message.getExchange();
+
+		final Memo memo = getMemo(exchange);
+		if (memo != null) {
+			if (memo.entity != null && !type.isInstance(memo.entity))
+				throw new IllegalStateException("Request entity was read as "
+						+ memo.entity.getClass() + ", not " + type);
+			return type.cast(memo.entity);
+		}
+
+		// already read for the resource method by a reader that wasn't wrapped
+		final OperationResourceInfo ori = exchange
+				.get(OperationResourceInfo.class);
+		final int body = bodyParameterIndex(ori);
+		final List<?> parameters = message.getContent(List.class);
+		if (parameters != null && body >= 0 && body < parameters.size()) {
+			final Object p = parameters.get(body);
+			if (p != null && !type.isInstance(p))
+				throw new IllegalStateException("Request entity was read as "
+						+ p.getClass() + ", not " + type);
+			memoize(exchange, p);
+			return type.cast(p);
+		}
+
+		final String contentType = (String) message.get(Message.CONTENT_TYPE);
+		final MediaType mediaType = (contentType != null) ? MediaType
+				.valueOf(contentType) : APPLICATION_OCTET_STREAM_TYPE;
+
+		final MessageBodyReader<T> reader = ProviderFactory.getInstance(
+				message).createMessageBodyReader(type, genericType,
+				NO_ANNOTATIONS, mediaType, message);
+		if (reader == null)
+			throw new WebApplicationException(UNSUPPORTED_MEDIA_TYPE);
+
+		@SuppressWarnings("unchecked")
+		final Map<String, List<String>> headers = (Map<String, List<String>>) message
+				.get(Message.PROTOCOL_HEADERS);
+		final T entity;
+		try {
+			InputStream in = message.getContent(InputStream.class);
+			if (ori == null || body >= 0) {
+				// keep the body, the resource method may read it again
+				final byte[] bytes = buffer(in, bufferLimit(message));
+				message.setContent(InputStream.class, new ByteArrayInputStream(
+						bytes));
+				in = new ByteArrayInputStream(bytes);
+			}
+
+			entity = reader.readFrom(type, genericType, NO_ANNOTATIONS,
+					mediaType, (headers != null) ? new MetadataMap<String, String>(
+							headers, true, true)
+							: new MetadataMap<String, String>(), in);
+		} catch (final IOException e) {
+			throw new WebApplicationException(e, BAD_REQUEST);
+		}
+
+		memoize(exchange, entity);
+		return entity;
+	}
+
+}
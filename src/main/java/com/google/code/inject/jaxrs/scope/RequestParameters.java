@@ -0,0 +1,279 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.code.inject.jaxrs.scope.CXFScopes.REQUEST;
+import static com.google.inject.internal.util.$Preconditions.checkNotNull;
+import static org.apache.cxf.jaxrs.utils.HttpUtils.pathDecode;
+import static org.apache.cxf.jaxrs.utils.InjectionUtils.handleParameter;
+import static org.apache.cxf.jaxrs.utils.JAXRSUtils.getStructuredParams;
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.cxf.jaxrs.model.ParameterType;
+import org.apache.cxf.jaxrs.model.URITemplate;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+
+import com.google.inject.Binder;
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+/**
+ * Binds request parameters for services that don't have access to the
+ * resource method arguments.
+ * <p>
+ * Parameters are converted once per exchange, like the resource method
+ * arguments, and kept in the request scope.
+ *
+ * <pre>
+ * RequestParameters.bindPathParameter(binder(), &quot;id&quot;, Long.class);
+ *
+ * public class BookService {
+ * 	&#064;Inject
+ * 	&#064;PathParameter(&quot;id&quot;)
+ * 	private Provider&lt;Long&gt; id;
+ * }
+ * </pre>
+ *
+ * Missing parameters are provided as <tt>null</tt>, inject them as
+ * <tt>&#064;Nullable</tt> if they are optional. A value that can't be
+ * converted fails the provision, so the request fails with a server error
+ * rather than the 404 a resource method argument would get.
+ */
+public final class RequestParameters {
+
+	private static final Annotation[] NO_ANNOTATIONS = {};
+
+	/** Converts a parameter of the current message */
+	private static abstract class ParameterProvider<T> implements Provider<T> {
+		private final String name;
+		private final Class<T> type;
+		private final ParameterType parameterType;
+
+		@Inject
+		private Provider<Exchange> exchange;
+
+		ParameterProvider(String name, Class<T> type,
+				ParameterType parameterType) {
+			this.name = name;
+			this.type = type;
+			this.parameterType = parameterType;
+		}
+
+		abstract String getValue(Message m, String name);
+
+		@Override
+		public T get() {
+			final Message m = exchange.get().getInMessage();
+			final String value = getValue(m, name);
+			if (value == null)
+				return null;
+			@SuppressWarnings("unchecked")
+			final T t = (T) handleParameter(value, true, type, NO_ANNOTATIONS,
+					parameterType, m);
+			return t;
+		}
+
+		@Override
+		public String toString() {
+			return parameterType + "(" + name + ")";
+		}
+	}
+
+	private static final class PathParameterProvider<T> extends
+			ParameterProvider<T> {
+		PathParameterProvider(String name, Class<T> type) {
+			super(name, type, ParameterType.PATH);
+		}
+
+		@Override
+		String getValue(Message m, String name) {
+			@SuppressWarnings("unchecked")
+			final MultivaluedMap<String, String> values = (MultivaluedMap<String, String>) m
+					.get(URITemplate.TEMPLATE_PARAMETERS);
+			if (values == null)
+				return null;
+			final String value = values.getFirst(name);
+			return (value != null) ? pathDecode(value) : null;
+		}
+	}
+
+	private static final class QueryParameterProvider<T> extends
+			ParameterProvider<T> {
+		/** query parameters parsed for an exchange */
+		private static final String PARSED = QueryParameterProvider.class
+				.getName();
+
+		QueryParameterProvider(String name, Class<T> type) {
+			super(name, type, ParameterType.QUERY);
+		}
+
+		@Override
+		String getValue(Message m, String name) {
+			@SuppressWarnings("unchecked")
+			MultivaluedMap<String, String> values = (MultivaluedMap<String, String>) m
+					.getExchange().get(PARSED);
+			if (values == null) {
+				final String query = (String) m.get(Message.QUERY_STRING);
+				values = getStructuredParams((query != null) ? query : "", "&",
+						true, true);
+				m.getExchange().put(PARSED, values);
+			}
+			return values.getFirst(name);
+		}
+	}
+
+	@SuppressWarnings("all")
+	private static final class PathParameterImpl implements PathParameter,
+			Serializable {
+		private static final long serialVersionUID = 0;
+
+		private final String value;
+
+		PathParameterImpl(String value) {
+			this.value = checkNotNull(value, "name");
+		}
+
+		@Override
+		public String value() {
+			return value;
+		}
+
+		@Override
+		public Class<? extends Annotation> annotationType() {
+			return PathParameter.class;
+		}
+
+		@Override
+		public int hashCode() {
+			// This is specified in java.lang.Annotation.
+			return (127 * "value".hashCode()) ^ value.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof PathParameter
+					&& value.equals(((PathParameter) o).value());
+		}
+
+		@Override
+		public String toString() {
+			return "@" + PathParameter.class.getName() + "(value=" + value
+					+ ")";
+		}
+	}
+
+	@SuppressWarnings("all")
+	private static final class QueryParameterImpl implements QueryParameter,
+			Serializable {
+		private static final long serialVersionUID = 0;
+
+		private final String value;
+
+		QueryParameterImpl(String value) {
+			this.value = checkNotNull(value, "name");
+		}
+
+		@Override
+		public String value() {
+			return value;
+		}
+
+		@Override
+		public Class<? extends Annotation> annotationType() {
+			return QueryParameter.class;
+		}
+
+		@Override
+		public int hashCode() {
+			// This is specified in java.lang.Annotation.
+			return (127 * "value".hashCode()) ^ value.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof QueryParameter
+					&& value.equals(((QueryParameter) o).value());
+		}
+
+		@Override
+		public String toString() {
+			return "@" + QueryParameter.class.getName() + "(value=" + value
+					+ ")";
+		}
+	}
+
+	/**
+	 * Bind a path parameter of the current request
+	 *
+	 * @param binder
+	 *            binder to bind the parameter with
+	 * @param name
+	 *            name of the parameter
+	 * @param type
+	 *            type to convert the parameter to, anything a
+	 *            <tt>&#064;PathParam</tt> can be converted to
+	 */
+	public static <T> void bindPathParameter(Binder binder, String name,
+			Class<T> type) {
+		binder.bind(Key.get(type, pathParameter(name)))
+				.toProvider(new PathParameterProvider<T>(name, type))
+				.in(REQUEST);
+	}
+
+	/**
+	 * Bind a query parameter of the current request
+	 *
+	 * @param binder
+	 *            binder to bind the parameter with
+	 * @param name
+	 *            name of the parameter
+	 * @param type
+	 *            type to convert the parameter to, anything a
+	 *            <tt>&#064;QueryParam</tt> can be converted to
+	 */
+	public static <T> void bindQueryParameter(Binder binder, String name,
+			Class<T> type) {
+		binder.bind(Key.get(type, queryParameter(name)))
+				.toProvider(new QueryParameterProvider<T>(name, type))
+				.in(REQUEST);
+	}
+
+	/**
+	 * Creates a {@link PathParameter} annotation with {@code name} as the
+	 * value.
+	 */
+	public static PathParameter pathParameter(String name) {
+		return new PathParameterImpl(name);
+	}
+
+	/**
+	 * Creates a {@link QueryParameter} annotation with {@code name} as the
+	 * value.
+	 */
+	public static QueryParameter queryParameter(String name) {
+		return new QueryParameterImpl(name);
+	}
+
+	private RequestParameters() {
+	}
+
+}
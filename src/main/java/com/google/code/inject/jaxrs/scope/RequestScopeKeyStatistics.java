@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+/**
+ * Provisioning counters of a request scoped key, see
+ * {@link RequestScopeMetrics}.
+ * <p>
+ * Times are in microseconds and include the creation of request scoped
+ * dependencies.
+ */
+public interface RequestScopeKeyStatistics {
+
+	String getKey();
+
+	/**
+	 * @return number of instances created
+	 */
+	long getProvisions();
+
+	/**
+	 * @return instances created per second over the last minute
+	 */
+	double getProvisionsPerSecond();
+
+	/**
+	 * @return number of times an instance already created in the exchange
+	 *         was provided
+	 */
+	long getHits();
+
+	long getTotalCreationTime();
+
+	double getMeanCreationTime();
+
+	long getCreationTime50thPercentile();
+
+	long getCreationTime95thPercentile();
+
+	long getCreationTime99thPercentile();
+
+	long getMaxCreationTime();
+
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.apache.cxf.message.Exchange;
+
+import com.google.code.inject.jaxrs.metrics.Histogram;
+import com.google.code.inject.jaxrs.metrics.MBeans;
+import com.google.code.inject.jaxrs.metrics.Meter;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+/**
+ * Provisioning metrics of the {@link CXFScopes#REQUEST} scope.
+ * <p>
+ * Collected for the servers of an injector that binds the metrics, e.g. by
+ * <tt>serve().withScopeMetrics()</tt>. The scope then counts, for each key,
+ * the instances it creates, how long it takes and how often an instance
+ * already created in the exchange is reused, as well as the totals of each
+ * request. Use them to find request scoped object graphs that are worth
+ * making singletons or pooling.
+ * <p>
+ * The metrics are registered with the platform MBean server under the
+ * <tt>com.google.code.inject.jaxrs:server=...,type=RequestScope</tt> name of
+ * the {@link MBeans} they are created with; a key is registered when it's
+ * first provided.
+ */
+public final class RequestScopeMetrics {
+
+	/** Request scoped provisions in progress on the current thread */
+	private static final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	/**
+	 * Create request scope metrics, to be bound in the injector of the
+	 * servers to measure.
+	 *
+	 * @param mbeans
+	 *            registrations of the server
+	 * @return new metrics
+	 */
+	public static RequestScopeMetrics create(MBeans mbeans) {
+		return new RequestScopeMetrics(mbeans);
+	}
+
+	private static long micros(long nanos) {
+		return NANOSECONDS.toMicros(nanos);
+	}
+
+	/** Counters of a single key */
+	final class KeyStats implements RequestScopeKeyStatistics {
+		private final Key<?> key;
+		private final Meter provisions = new Meter();
+		private final AtomicLong hits = new AtomicLong();
+		private final Histogram creationTime = new Histogram();
+
+		KeyStats(Key<?> key) {
+			this.key = key;
+		}
+
+		/**
+		 * @return <tt>true</tt> if the counters belong to the metrics
+		 */
+		boolean of(RequestScopeMetrics metrics) {
+			return RequestScopeMetrics.this == metrics;
+		}
+
+		/**
+		 * Count an instance provided from the scope.
+		 */
+		void hit() {
+			hits.incrementAndGet();
+		}
+
+		/**
+		 * Create an instance and count it.
+		 *
+		 * @param creator
+		 *            unscoped provider
+		 * @param store
+		 *            scope to count the instance in
+		 * @return new instance
+		 */
+		<T> T provision(Provider<T> creator, RequestScopeStore store) {
+			final int[] nested = depth.get();
+			final long start = System.nanoTime();
+			final T t;
+			nested[0]++;
+			try {
+				t = creator.get();
+			} finally {
+				nested[0]--;
+			}
+			final long nanos = System.nanoTime() - start;
+
+			provisions.mark();
+			creationTime.record(nanos);
+			store.created((nested[0] == 0) ? nanos : 0);
+			return t;
+		}
+
+		@Override
+		public String getKey() {
+			return key.toString();
+		}
+
+		@Override
+		public long getProvisions() {
+			return provisions.getCount();
+		}
+
+		@Override
+		public double getProvisionsPerSecond() {
+			return provisions.getOneMinuteRate();
+		}
+
+		@Override
+		public long getHits() {
+			return hits.get();
+		}
+
+		@Override
+		public long getTotalCreationTime() {
+			return micros(creationTime.getSum());
+		}
+
+		@Override
+		public double getMeanCreationTime() {
+			return creationTime.getMean() / 1000;
+		}
+
+		@Override
+		public long getCreationTime50thPercentile() {
+			return micros(creationTime.getPercentile(0.5));
+		}
+
+		@Override
+		public long getCreationTime95thPercentile() {
+			return micros(creationTime.getPercentile(0.95));
+		}
+
+		@Override
+		public long getCreationTime99thPercentile() {
+			return micros(creationTime.getPercentile(0.99));
+		}
+
+		@Override
+		public long getMaxCreationTime() {
+			return micros(creationTime.getMax());
+		}
+	}
+
+	/** Totals of completed requests */
+	private static final class RequestStats implements RequestScopeStatistics {
+		private final Histogram created = new Histogram();
+		private final Histogram provisioningTime = new Histogram();
+
+		void record(RequestScopeStore store) {
+			created.record(store.getCreated());
+			provisioningTime.record(store.getProvisionNanos());
+		}
+
+		@Override
+		public long getRequests() {
+			return created.getCount();
+		}
+
+		@Override
+		public long getObjectsCreated() {
+			return created.getSum();
+		}
+
+		@Override
+		public double getMeanObjectsCreated() {
+			return created.getMean();
+		}
+
+		@Override
+		public long getObjectsCreated99thPercentile() {
+			return created.getPercentile(0.99);
+		}
+
+		@Override
+		public long getMaxObjectsCreated() {
+			return created.getMax();
+		}
+
+		@Override
+		public long getTotalProvisioningTime() {
+			return micros(provisioningTime.getSum());
+		}
+
+		@Override
+		public double getMeanProvisioningTime() {
+			return provisioningTime.getMean() / 1000;
+		}
+
+		@Override
+		public long getProvisioningTime50thPercentile() {
+			return micros(provisioningTime.getPercentile(0.5));
+		}
+
+		@Override
+		public long getProvisioningTime95thPercentile() {
+			return micros(provisioningTime.getPercentile(0.95));
+		}
+
+		@Override
+		public long getProvisioningTime99thPercentile() {
+			return micros(provisioningTime.getPercentile(0.99));
+		}
+
+		@Override
+		public long getMaxProvisioningTime() {
+			return micros(provisioningTime.getMax());
+		}
+	}
+
+	private final ConcurrentMap<Key<?>, KeyStats> keys = new ConcurrentHashMap<Key<?>, KeyStats>();
+	private final RequestStats requests = new RequestStats();
+	private final MBeans mbeans;
+
+	private RequestScopeMetrics(MBeans mbeans) {
+		this.mbeans = mbeans;
+		mbeans.register(requests, RequestScopeStatistics.class,
+				"type=RequestScope,name=requests");
+	}
+
+	/**
+	 * Record the totals of a request.
+	 *
+	 * @param exchange
+	 *            completed exchange
+	 */
+	void completed(Exchange exchange) {
+		final RequestScopeStore store = exchange.get(RequestScopeStore.class);
+		if (store != null)
+			requests.record(store);
+	}
+
+	/**
+	 * @param key
+	 *            request scoped key
+	 * @return counters of the key
+	 */
+	KeyStats forKey(Key<?> key) {
+		final KeyStats stats = keys.get(key);
+		if (stats != null)
+			return stats;
+
+		final KeyStats created = new KeyStats(key);
+		final KeyStats existing = keys.putIfAbsent(key, created);
+		if (existing != null)
+			return existing;
+		mbeans.register(created, RequestScopeKeyStatistics.class,
+				"type=RequestScope,key=" + ObjectName.quote(key.toString()));
+		return created;
+	}
+
+	/**
+	 * @return totals of completed requests
+	 */
+	public RequestScopeStatistics getRequestStatistics() {
+		return requests;
+	}
+
+	/**
+	 * @return counters of the keys provided so far
+	 */
+	public Collection<RequestScopeKeyStatistics> getKeyStatistics() {
+		return Collections.<RequestScopeKeyStatistics> unmodifiableCollection(keys
+				.values());
+	}
+
+}
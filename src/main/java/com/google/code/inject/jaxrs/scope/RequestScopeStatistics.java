@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+/**
+ * Per-request provisioning totals of the request scope, see
+ * {@link RequestScopeMetrics}.
+ * <p>
+ * Times are in microseconds, spent creating the outermost request scoped
+ * objects of each request.
+ */
+public interface RequestScopeStatistics {
+
+	/**
+	 * @return number of completed requests
+	 */
+	long getRequests();
+
+	/**
+	 * @return number of objects created in all requests
+	 */
+	long getObjectsCreated();
+
+	double getMeanObjectsCreated();
+
+	long getObjectsCreated99thPercentile();
+
+	long getMaxObjectsCreated();
+
+	long getTotalProvisioningTime();
+
+	double getMeanProvisioningTime();
+
+	long getProvisioningTime50thPercentile();
+
+	long getProvisioningTime95thPercentile();
+
+	long getProvisioningTime99thPercentile();
+
+	long getMaxProvisioningTime();
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.inject.internal.util.$Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.cxf.message.Exchange;
+
+import com.google.inject.OutOfScopeException;
+
+/**
+ * Per-exchange storage of request scoped instances.
+ * <p>
+ * Each scoped key is assigned a fixed slot in the {@link Slots} of the
+ * server handling the exchange, the first time it's used with that server. A
+ * store is attached to the exchange once and is then accessed without
+ * locking.
+ */
+final class RequestScopeStore {
+
+	/**
+	 * Slot indexes of the scoped keys used by one server. Discarded with the
+	 * server, so the stores of its exchanges are sized by the keys it
+	 * actually uses.
+	 */
+	static final class Slots {
+		private final ConcurrentMap<Object, Integer> indexes = new ConcurrentHashMap<Object, Integer>();
+
+		/** metrics of the server, set before it starts */
+		private RequestScopeMetrics metrics;
+
+		/**
+		 * @param scoped
+		 *            scoped provider of a key
+		 * @return slot index of the key, allocated on the first call
+		 */
+		int indexOf(Object scoped) {
+			final Integer index = indexes.get(scoped);
+			if (index != null)
+				return index;
+			synchronized (this) {
+				final Integer existing = indexes.get(scoped);
+				if (existing != null)
+					return existing;
+				final int allocated = indexes.size();
+				indexes.put(scoped, allocated);
+				return allocated;
+			}
+		}
+
+		int size() {
+			return indexes.size();
+		}
+
+		/**
+		 * @return metrics of the server, or null if it doesn't collect them
+		 */
+		RequestScopeMetrics getMetrics() {
+			return metrics;
+		}
+
+		void setMetrics(RequestScopeMetrics metrics) {
+			this.metrics = metrics;
+		}
+	}
+
+	/** How long a thread waits for the scope to be left by its owner */
+	static final long HANDOFF_TIMEOUT_MILLIS = 10000;
+
+	/**
+	 * Retrieve the store attached to the exchange, attaching a new one if
+	 * necessary.
+	 *
+	 * @param exchange
+	 *            request exchange
+	 * @param slots
+	 *            slots of the server handling the exchange, used if a new
+	 *            store is attached
+	 * @return store, never null
+	 */
+	static RequestScopeStore of(Exchange exchange, Slots slots) {
+		RequestScopeStore store = exchange.get(RequestScopeStore.class);
+		if (store == null) {
+			synchronized (exchange) {
+				store = exchange.get(RequestScopeStore.class);
+				if (store == null) {
+					store = new RequestScopeStore(slots);
+					exchange.put(RequestScopeStore.class, store);
+				}
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Retrieve the store of an exchange that entered the request scope.
+	 *
+	 * @param exchange
+	 *            request exchange
+	 * @return store, never null
+	 * @throws OutOfScopeException
+	 *             if the exchange never entered the request scope
+	 */
+	static RequestScopeStore attached(Exchange exchange) {
+		final RequestScopeStore store = exchange.get(RequestScopeStore.class);
+		if (store == null)
+			throw new OutOfScopeException(
+					"The exchange never entered the request scope");
+		return store;
+	}
+
+	private static final AtomicIntegerFieldUpdater<RequestScopeStore> CREATED = AtomicIntegerFieldUpdater
+			.newUpdater(RequestScopeStore.class, "created");
+	private static final AtomicLongFieldUpdater<RequestScopeStore> PROVISION_NANOS = AtomicLongFieldUpdater
+			.newUpdater(RequestScopeStore.class, "provisionNanos");
+
+	private final Slots layout;
+	private final AtomicReferenceArray<Object> slots;
+
+	/** Thread currently running in the scope of the exchange */
+	private final AtomicReference<Thread> owner = new AtomicReference<Thread>();
+
+	/** Threads waiting in {@link #acquire(Thread)} */
+	private volatile int waiting;
+
+	/**
+	 * Slots allocated after this store was created, i.e. by keys used for the
+	 * first time while the exchange was in progress
+	 */
+	private Map<Integer, Object> overflow;
+
+	/** Objects created in the scope, counted by {@link RequestScopeMetrics} */
+	private volatile int created;
+
+	/** Time spent creating objects, counted by {@link RequestScopeMetrics} */
+	private volatile long provisionNanos;
+
+	private RequestScopeStore(Slots layout) {
+		this.layout = layout;
+		this.slots = new AtomicReferenceArray<Object>(layout.size());
+	}
+
+	Slots getLayout() {
+		return layout;
+	}
+
+	/**
+	 * @return number of slots allocated with the store
+	 */
+	int capacity() {
+		return slots.length();
+	}
+
+	/**
+	 * Make the thread the owner of the exchange scope.
+	 * <p>
+	 * A scope can only be active on one thread at a time, but it can move to
+	 * a different thread once the previous owner has left it, e.g. when a
+	 * suspended request is resumed. If the scope is active in a different
+	 * thread the hand-off is awaited, a thread resuming a request can get
+	 * there before the thread that resumed it has left the scope.
+	 *
+	 * @param thread
+	 *            new owner
+	 * @return true if ownership was acquired, false if the thread already
+	 *         owned the scope
+	 * @throws IllegalStateException
+	 *             if the scope stays active in a different thread for
+	 *             {@link #HANDOFF_TIMEOUT_MILLIS}
+	 */
+	boolean acquire(Thread thread) {
+		if (owner.compareAndSet(null, thread))
+			return true;
+		if (owner.get() == thread)
+			return false;
+		awaitHandOff(thread);
+		return true;
+	}
+
+	private synchronized void awaitHandOff(Thread thread) {
+		final long deadline = System.nanoTime()
+				+ MILLISECONDS.toNanos(HANDOFF_TIMEOUT_MILLIS);
+		waiting++;
+		try {
+			while (!owner.compareAndSet(null, thread)) {
+				final long remaining = deadline - System.nanoTime();
+				checkState(remaining > 0,
+						"Trying to transfer exchange scope but original scope is still active");
+				try {
+					NANOSECONDS.timedWait(this, remaining);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(
+							"Interrupted waiting for the exchange scope", e);
+				}
+			}
+		} finally {
+			waiting--;
+		}
+	}
+
+	/**
+	 * Leave the scope acquired with {@link #acquire(Thread)}.
+	 *
+	 * @param thread
+	 *            current owner
+	 */
+	void release(Thread thread) {
+		if (owner.compareAndSet(thread, null) && waiting > 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Count an object created in the scope.
+	 *
+	 * @param nanos
+	 *            time spent creating it, 0 if it was created while creating
+	 *            another object
+	 */
+	void created(long nanos) {
+		CREATED.incrementAndGet(this);
+		if (nanos != 0)
+			PROVISION_NANOS.addAndGet(this, nanos);
+	}
+
+	int getCreated() {
+		return created;
+	}
+
+	long getProvisionNanos() {
+		return provisionNanos;
+	}
+
+	/**
+	 * @param slot
+	 *            slot index
+	 * @return stored value or null
+	 */
+	Object get(int slot) {
+		if (slot < slots.length())
+			return slots.get(slot);
+
+		synchronized (this) {
+			return overflow == null ? null : overflow.get(slot);
+		}
+	}
+
+	/**
+	 * Store a value unless one is present already.
+	 *
+	 * @param slot
+	 *            slot index
+	 * @param value
+	 *            value to store
+	 * @return the value in the slot after the operation
+	 */
+	Object putIfAbsent(int slot, Object value) {
+		if (slot < slots.length()) {
+			if (slots.compareAndSet(slot, null, value))
+				return value;
+			return slots.get(slot);
+		}
+
+		synchronized (this) {
+			if (overflow == null)
+				overflow = new HashMap<Integer, Object>();
+			final Object previous = overflow.get(slot);
+			if (previous != null)
+				return previous;
+			overflow.put(slot, value);
+			return value;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static org.apache.cxf.transport.http.AbstractHTTPDestination.HTTP_REQUEST;
+import static org.apache.cxf.transport.http.AbstractHTTPDestination.HTTP_RESPONSE;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.cxf.message.Exchange;
+
+import com.google.inject.Binder;
+import com.google.inject.Key;
+
+/**
+ * Accessors of the servlet request and response, for transports running in
+ * a servlet container. Kept apart from {@link CXFScopes} so the servlet API is
+ * only loaded when it's used.
+ */
+public final class ServletAccessors {
+
+	/** Reads the servlet request of the exchange */
+	public static final ExchangeAccessor<HttpServletRequest> REQUEST = new ExchangeAccessor<HttpServletRequest>() {
+		@Override
+		public HttpServletRequest get(Exchange exchange) {
+			return (HttpServletRequest) exchange.getInMessage().get(
+					HTTP_REQUEST);
+		}
+	};
+
+	/** Reads the servlet response of the exchange */
+	public static final ExchangeAccessor<HttpServletResponse> RESPONSE = new ExchangeAccessor<HttpServletResponse>() {
+		@Override
+		public HttpServletResponse get(Exchange exchange) {
+			return (HttpServletResponse) exchange.getInMessage().get(
+					HTTP_RESPONSE);
+		}
+	};
+
+	static void bind(Binder binder) {
+		CXFScopes.bindToExchange(binder, Key.get(HttpServletRequest.class),
+				REQUEST);
+		CXFScopes.bindToExchange(binder, Key.get(HttpServletResponse.class),
+				RESPONSE);
+	}
+
+	private ServletAccessors() {
+	}
+
+}
@@ -124,6 +124,16 @@ public class BindingProvider<T> {
 		setBinding(injector.getBinding(key), injector.getScopeBindings());
 	}
 
+	/**
+	 * Resolve the binding of a key in an existing injector
+	 */
+	public static <T> BindingProvider<T> resolveBinding(
+			final Injector injector, final Key<T> key) {
+		final BindingProvider<T> binding = new BindingProvider<T>(key);
+		binding.setInjector(injector);
+		return binding;
+	}
+
 	public static <T> BindingProvider<T> provideBinding(final Binder binder,
 			final Key<T> key) {
 		final BindingProvider<T> binding = new BindingProvider<T>(key);
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static com.google.code.inject.jaxrs.scope.CXFScopes.continueRequest;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.code.inject.jaxrs.scope.FanOut;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class AsyncInvokerTest {
+
+	@RequestScope
+	public static class Item {
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class AsyncResource {
+		private static final ExecutorService backend = Executors
+				.newCachedThreadPool();
+
+		@Inject
+		@FanOut
+		private Provider<ExecutorService> fanOut;
+
+		@Inject
+		private Provider<Item> item;
+
+		private String id() {
+			return String.valueOf(System.identityHashCode(item.get()));
+		}
+
+		/** Completed by a worker the request scope was handed off to */
+		@GET
+		@Path("handoff")
+		public CompletionStage<String> handoff() {
+			final String id = id();
+			final CompletableFuture<String> result = new CompletableFuture<String>();
+			backend.submit(continueRequest(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					Thread.sleep(5);
+					result.complete(id + " " + id());
+					return null;
+				}
+			}));
+			return result;
+		}
+
+		/** Composed of stages running on the fan-out executor */
+		@GET
+		@Path("fanout")
+		public CompletionStage<String> fanOut() {
+			final String id = id();
+			final Supplier<String> child = new Supplier<String>() {
+				@Override
+				public String get() {
+					return id();
+				}
+			};
+			return CompletableFuture.supplyAsync(child, fanOut.get())
+					.thenCombine(
+							CompletableFuture.supplyAsync(child, fanOut.get()),
+							new BiFunction<String, String, String>() {
+								@Override
+								public String apply(String a, String b) {
+									return id + " " + a + " " + b;
+								}
+							});
+		}
+
+		/** A stage that isn't a future and can't be converted to one */
+		@GET
+		@Path("opaque")
+		public CompletionStage<String> opaque() {
+			final CompletableFuture<String> result = new CompletableFuture<String>();
+			backend.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					Thread.sleep(5);
+					result.complete("opaque");
+					return null;
+				}
+			});
+			return notAFuture(result);
+		}
+
+		@GET
+		@Path("minimal")
+		public CompletionStage<String> minimal() {
+			return CompletableFuture.supplyAsync(new Supplier<String>() {
+				@Override
+				public String get() {
+					return "minimal";
+				}
+			}, backend).minimalCompletionStage();
+		}
+
+		@GET
+		@Path("failed")
+		public CompletionStage<String> failed() {
+			final CompletableFuture<String> result = new CompletableFuture<String>();
+			result.completeExceptionally(new WebApplicationException(409));
+			return notAFuture(result);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CompletionStage<String> notAFuture(
+			final CompletableFuture<String> future) {
+		return (CompletionStage<String>) Proxy.newProxyInstance(
+				CompletionStage.class.getClassLoader(),
+				new Class<?>[] { CompletionStage.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						if (method.getName().equals("toCompletableFuture"))
+							throw new UnsupportedOperationException();
+						try {
+							return method.invoke(future, args);
+						} catch (final InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	private ExecutorService pool;
+	private ExecutorService clients;
+
+	@Before
+	public void setUp() {
+		pool = Executors.newCachedThreadPool();
+		clients = Executors.newFixedThreadPool(8);
+	}
+
+	@After
+	public void tearDown() {
+		clients.shutdownNow();
+		pool.shutdownNow();
+	}
+
+	/**
+	 * @param dispatched
+	 *            invoke on the pool, where stages are awaited instead of
+	 *            suspended on
+	 */
+	private TestServer start(final boolean dispatched) throws Exception {
+		return TestServer.start(Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				final ServerConfigurationBuilder server = serve().fanOutOn(
+						ExecutorService.class, 4);
+				if (dispatched)
+					server.invokeOn(ExecutorService.class);
+				invokeVia(AsyncInvoker.class);
+				publish(AsyncResource.class);
+			}
+		}, new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(ExecutorService.class).toInstance(pool);
+			}
+		}));
+	}
+
+	/** Every request sees a single request scoped item */
+	private void assertSingleScope(final TestServer server, final String path)
+			throws Exception {
+		final List<Future<TestServer.Reply>> replies = new ArrayList<Future<TestServer.Reply>>();
+		for (int i = 0; i < 50; i++)
+			replies.add(clients.submit(new Callable<TestServer.Reply>() {
+				@Override
+				public TestServer.Reply call() throws Exception {
+					return server.get(path);
+				}
+			}));
+
+		for (final Future<TestServer.Reply> reply : replies) {
+			final TestServer.Reply r = reply.get();
+			assertEquals(r.toString(), 200, r.status);
+			final String[] ids = r.body.split(" ");
+			for (final String id : ids)
+				assertEquals(r.body, ids[0], id);
+		}
+	}
+
+	private void assertStagesWritten(TestServer server) throws Exception {
+		assertSingleScope(server, "/fanout");
+		assertEquals("opaque", server.get("/opaque").body);
+		assertEquals("minimal", server.get("/minimal").body);
+		assertEquals(409, server.get("/failed").status);
+	}
+
+	@Test
+	public void suspendedRequestsAreResumed() throws Exception {
+		final TestServer server = start(false);
+		try {
+			assertSingleScope(server, "/handoff");
+			assertStagesWritten(server);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void dispatchedInvocationsAwaitTheStage() throws Exception {
+		final TestServer server = start(true);
+		try {
+			assertStagesWritten(server);
+		} finally {
+			server.stop();
+		}
+	}
+
+}
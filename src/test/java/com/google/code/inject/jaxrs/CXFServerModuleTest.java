@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class CXFServerModuleTest {
+
+	@RequestScope
+	public static class Item {
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class ItemResource {
+		@Inject
+		private Provider<Item> item;
+
+		@GET
+		public String same() {
+			return String.valueOf(item.get() == item.get());
+		}
+	}
+
+	private static void assertScoped(CXFServerModule module) throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(module));
+		try {
+			assertEquals("true", server.get("/").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void scopesCanBeEnabledBeforeImplyingOptions() throws Exception {
+		assertScoped(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().enableCustomScopes().withSubresourcesInjection()
+						.enableCustomScopes();
+				publish(ItemResource.class);
+			}
+		});
+	}
+
+	@Test
+	public void scopesCanBeEnabledAfterImplyingOptions() throws Exception {
+		assertScoped(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().withSubresourcesInjection().enableCustomScopes();
+				publish(ItemResource.class);
+			}
+		});
+	}
+
+	@Test
+	public void allocationSamplingCannotBeConfiguredTwice() {
+		try {
+			Guice.createInjector(new CXFServerModule() {
+				@Override
+				protected void configure() {
+					serve().withAllocationSampling(1).withAllocationSampling(
+							10);
+					publish(ItemResource.class);
+				}
+			});
+			fail("Second sampling rate accepted");
+		} catch (final CreationException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(
+					"Allocation sampling already enabled"));
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.internal.VirtualThreadExecutorProvider;
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+
+public class InvocationDispatchTest {
+
+	@RequestScope
+	public static class Item {
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class ThreadResource {
+		@Inject
+		private Provider<Item> item;
+
+		@GET
+		public String get() {
+			return Thread.currentThread() + "|"
+					+ (item.get() == item.get());
+		}
+	}
+
+	private ExecutorService pool;
+
+	@Before
+	public void setUp() {
+		pool = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "dispatch");
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	private static String get(Module... modules) throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(modules));
+		try {
+			final TestServer.Reply reply = server.get("/");
+			assertEquals(reply.toString(), 200, reply.status);
+			return reply.body;
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void invocationsRunOnTheExecutorInTheRequestScope()
+			throws Exception {
+		final String body = get(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().invokeOn(ExecutorService.class);
+				publish(ThreadResource.class);
+			}
+		}, new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(ExecutorService.class).toInstance(pool);
+			}
+		});
+
+		assertTrue(body, body.contains("[dispatch,"));
+		assertTrue(body, body.endsWith("|true"));
+	}
+
+	@Test
+	public void invocationsRunOnVirtualThreads() throws Exception {
+		assumeTrue(Runtime.version().feature() >= 21);
+
+		final String body = get(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().onVirtualThreads();
+				publish(ThreadResource.class);
+			}
+		});
+
+		assertTrue(body, body.startsWith("VirtualThread"));
+		assertTrue(body, body.endsWith("|true"));
+	}
+
+	@Test
+	public void virtualThreadsFailProvisioningBeforeJava21() {
+		assumeTrue(Runtime.version().feature() < 21);
+
+		try {
+			new VirtualThreadExecutorProvider().get();
+			fail();
+		} catch (final ProvisionException e) {
+			assertEquals("Virtual threads require Java 21 or newer", e
+					.getErrorMessages().iterator().next().getMessage());
+		}
+	}
+
+}
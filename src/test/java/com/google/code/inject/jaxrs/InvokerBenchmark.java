@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of calling a resource method through the <tt>JAXRSInvoker</tt>, which
+ * uses <tt>Method.invoke</tt>, and through the {@link MethodHandleInvoker}.
+ * <p>
+ * Only the invocation is measured, the arguments are converted once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class InvokerBenchmark {
+
+	@Path("/")
+	public static class Resource {
+		@GET
+		public String get() {
+			return "";
+		}
+
+		@GET
+		@Path("{a}/{b}")
+		public int add(@PathParam("a") int a, @PathParam("b") int b) {
+			return a + b;
+		}
+	}
+
+	private final Exchange exchange = new ExchangeImpl();
+	private final Resource resource = new Resource();
+	private final Object[] none = new Object[0];
+	private final Object[] two = { 1, 2 };
+
+	private MethodHandleInvoker reflective;
+	private MethodHandleInvoker handles;
+	private Method get;
+	private Method add;
+
+	@Setup
+	public void setUp() throws Exception {
+		// without handles it invokes reflectively, as the JAXRSInvoker
+		reflective = new MethodHandleInvoker();
+		handles = new MethodHandleInvoker();
+		final ClassResourceInfo cri = ResourceUtils.createClassResourceInfo(
+				Resource.class, Resource.class, true, true);
+		handles.prepare(Collections.singleton(cri));
+		// the methods CXF passes to the invoker
+		for (final OperationResourceInfo ori : cri.getMethodDispatcher()
+				.getOperationResourceInfos()) {
+			final Method m = ori.getMethodToInvoke();
+			if (m.getName().equals("get"))
+				get = m;
+			else
+				add = m;
+		}
+	}
+
+	@Benchmark
+	public Object reflectiveNoArgs() throws Exception {
+		return reflective.performInvocation(exchange, resource, get, none);
+	}
+
+	@Benchmark
+	public Object handleNoArgs() throws Exception {
+		return handles.performInvocation(exchange, resource, get, none);
+	}
+
+	@Benchmark
+	public Object reflectiveTwoArgs() throws Exception {
+		return reflective.performInvocation(exchange, resource, add, two);
+	}
+
+	@Benchmark
+	public Object handleTwoArgs() throws Exception {
+		return handles.performInvocation(exchange, resource, add, two);
+	}
+
+}
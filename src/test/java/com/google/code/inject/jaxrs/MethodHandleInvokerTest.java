@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+import org.apache.cxf.message.ExchangeImpl;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+public class MethodHandleInvokerTest {
+
+	@Produces("text/plain")
+	public static class Sub {
+		@GET
+		public String get() {
+			return "sub";
+		}
+	}
+
+	@Path("/calc")
+	@Produces("text/plain")
+	public static class CalcResource {
+		@GET
+		@Path("zero")
+		public String zero() {
+			return "0";
+		}
+
+		@GET
+		@Path("sum")
+		public String sum(@QueryParam("a") int a, @QueryParam("b") int b) {
+			return String.valueOf(a + b);
+		}
+
+		@GET
+		@Path("join")
+		public String join(@QueryParam("a") String a,
+				@QueryParam("b") String b, @QueryParam("c") String c,
+				@QueryParam("d") String d, @QueryParam("e") String e) {
+			return a + b + c + d + e;
+		}
+
+		@GET
+		@Path("none")
+		public void none() {
+		}
+
+		@GET
+		@Path("fail")
+		public String fail() {
+			throw new WebApplicationException(409);
+		}
+
+		@Path("sub")
+		public Sub sub() {
+			return new Sub();
+		}
+	}
+
+	private static MethodHandleInvoker prepared() {
+		final MethodHandleInvoker invoker = new MethodHandleInvoker();
+		invoker.prepare(Collections.singleton(ResourceUtils
+				.createClassResourceInfo(CalcResource.class,
+						CalcResource.class, true, true)));
+		return invoker;
+	}
+
+	private static Method method(String name) {
+		for (final Method m : CalcResource.class.getMethods())
+			if (m.getName().equals(name))
+				return m;
+		throw new AssertionError(name);
+	}
+
+	@Test
+	public void resourceMethodsAreInvoked() throws Exception {
+		final Injector injector = Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve();
+				invokeVia(MethodHandleInvoker.class);
+				publish(CalcResource.class);
+			}
+		});
+		final TestServer server = TestServer.start(injector
+				.getInstance(JAXRSServerFactoryBean.class));
+		try {
+			assertEquals("0", server.get("/calc/zero").body);
+			assertEquals("5", server.get("/calc/sum?a=2&b=3").body);
+			assertEquals("2", server.get("/calc/sum?a=2").body);
+			assertEquals("abcde",
+					server.get("/calc/join?a=a&b=b&c=c&d=d&e=e").body);
+			assertEquals(204, server.get("/calc/none").status);
+			assertEquals(409, server.get("/calc/fail").status);
+			assertEquals("sub", server.get("/calc/sub").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void methodExceptionsAreWrapped() throws Exception {
+		try {
+			prepared().performInvocation(new ExchangeImpl(),
+					new CalcResource(), method("fail"), new Object[0]);
+			fail();
+		} catch (final InvocationTargetException e) {
+			assertTrue(e.getCause() instanceof WebApplicationException);
+			// called through the handle, not reflectively
+			for (final StackTraceElement frame : e.getCause().getStackTrace()) {
+				if (frame.getMethodName().equals("performInvocation"))
+					break;
+				assertTrue(frame.toString(), !frame.getClassName()
+						.startsWith("jdk.internal.reflect"));
+			}
+		}
+	}
+
+	@Test
+	public void argumentsThatDoNotFitAreIllegal() throws Exception {
+		final MethodHandleInvoker invoker = prepared();
+		final Object[][] illegal = { { null, 1 }, { "1", 1 } };
+		for (final Object[] args : illegal) {
+			try {
+				invoker.performInvocation(new ExchangeImpl(),
+						new CalcResource(), method("sum"), args);
+				fail();
+			} catch (final IllegalArgumentException e) {
+				// as thrown by Method.invoke
+			}
+		}
+		assertEquals("3", invoker.performInvocation(new ExchangeImpl(),
+				new CalcResource(), method("sum"), new Object[] { 1, 2 }));
+	}
+
+	@Test
+	public void subresourceMethodsArePrepared() throws Exception {
+		final Object result = prepared().performInvocation(
+				new ExchangeImpl(), new Sub(),
+				Sub.class.getMethod("get"), new Object[0]);
+		assertSame("sub", result);
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
+public class PooledResourceTest {
+
+	static final AtomicInteger created = new AtomicInteger();
+	static final AtomicInteger active = new AtomicInteger();
+	static final AtomicInteger maxActive = new AtomicInteger();
+	static volatile CountDownLatch entered;
+	static volatile CountDownLatch proceed;
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class PooledResource {
+		public PooledResource() {
+			created.incrementAndGet();
+		}
+
+		@GET
+		@Path("work")
+		public String work() throws InterruptedException {
+			final int now = active.incrementAndGet();
+			int max;
+			while (now > (max = maxActive.get())
+					&& !maxActive.compareAndSet(max, now))
+				;
+			Thread.sleep(2);
+			active.decrementAndGet();
+			return "ok";
+		}
+
+		@GET
+		@Path("block")
+		public String block() throws InterruptedException {
+			entered.countDown();
+			proceed.await(10, SECONDS);
+			return "ok";
+		}
+	}
+
+	private ExecutorService clients;
+
+	@Before
+	public void setUp() {
+		created.set(0);
+		active.set(0);
+		maxActive.set(0);
+		entered = new CountDownLatch(1);
+		proceed = new CountDownLatch(1);
+		clients = Executors.newFixedThreadPool(16);
+	}
+
+	@After
+	public void tearDown() {
+		clients.shutdownNow();
+	}
+
+	private static TestServer start(final int size, final long timeoutMillis)
+			throws Exception {
+		return TestServer.start(Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				publish(PooledResource.class).pooled(size, timeoutMillis,
+						MILLISECONDS);
+			}
+		}));
+	}
+
+	private static ResourcePoolStatistics statistics(Injector injector) {
+		for (final ResourceProvider provider : injector
+				.getInstance(Key.get(new TypeLiteral<Set<ResourceProvider>>() {
+				})))
+			if (provider instanceof ResourcePoolStatistics)
+				return (ResourcePoolStatistics) provider;
+		throw new AssertionError("no pooled resource provider");
+	}
+
+	private Future<TestServer.Reply> get(final TestServer server,
+			final String path) {
+		return clients.submit(new Callable<TestServer.Reply>() {
+			@Override
+			public TestServer.Reply call() throws Exception {
+				return server.get(path);
+			}
+		});
+	}
+
+	@Test
+	public void instancesAreBoundedUnderLoad() throws Exception {
+		final TestServer server = start(2, 10000);
+		try {
+			final List<Future<TestServer.Reply>> replies = new ArrayList<Future<TestServer.Reply>>();
+			for (int i = 0; i < 200; i++)
+				replies.add(get(server, "/work"));
+			for (final Future<TestServer.Reply> reply : replies)
+				assertEquals(200, reply.get().status);
+
+			assertTrue("max active " + maxActive, maxActive.get() <= 2);
+			assertTrue("created " + created, created.get() <= 2);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void exhaustedPoolFallsBackToUnpooledInstances() throws Exception {
+		final TestServer server = start(1, 100);
+		try {
+			final Future<TestServer.Reply> blocked = get(server, "/block");
+			assertTrue(entered.await(10, SECONDS));
+
+			assertEquals(200, server.get("/work").status);
+			assertEquals(2, created.get());
+
+			proceed.countDown();
+			assertEquals(200, blocked.get().status);
+			assertEquals(200, server.get("/work").status);
+			assertEquals(200, server.get("/work").status);
+			assertEquals(2, created.get());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void exhaustedPoolDoesNotWaitByDefault() throws Exception {
+		final Injector injector = Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				publish(PooledResource.class).pooled(1);
+			}
+		});
+		final TestServer server = TestServer.start(injector);
+		try {
+			final Future<TestServer.Reply> blocked = get(server, "/block");
+			assertTrue(entered.await(10, SECONDS));
+
+			assertEquals(200, server.get("/work").status);
+			final ResourcePoolStatistics statistics = statistics(injector);
+			assertEquals(0, statistics.getWaits());
+			assertEquals(1, statistics.getTimeouts());
+
+			proceed.countDown();
+			assertEquals(200, blocked.get().status);
+			assertEquals(2, created.get());
+		} finally {
+			server.stop();
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static com.google.inject.name.Names.named;
+import static org.junit.Assert.assertEquals;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+public class QualifiedServerTest {
+
+	@Produces("text/plain")
+	public static class Item {
+		@LocatorParam("id")
+		String id;
+
+		@GET
+		public String get() {
+			return id;
+		}
+	}
+
+	@RequestScope
+	public static class Counter {
+		int count;
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class StoreResource {
+		@Injected
+		@Path("item/{id}")
+		public Item item(@PathParam("id") String id) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Path("/count")
+	@Produces("text/plain")
+	@RequestScope
+	public static class CountResource {
+		@Inject
+		private Provider<Counter> counter;
+
+		@GET
+		public String count() {
+			counter.get().count++;
+			return String.valueOf(++counter.get().count);
+		}
+	}
+
+	private static CXFServerModule store(String name) {
+		return new CXFServerModule(named(name)) {
+			@Override
+			protected void configure() {
+				serve().withSubresourcesInjection();
+				publish(StoreResource.class);
+				publish(CountResource.class);
+			}
+		};
+	}
+
+	private static TestServer start(Injector injector, String name)
+			throws Exception {
+		return TestServer.start(injector.getInstance(Key.get(
+				JAXRSServerFactoryBean.class, named(name))));
+	}
+
+	@Test
+	public void qualifiedModulesInjectTheirResources() throws Exception {
+		final Injector injector = Guice.createInjector(store("a"),
+				store("b"));
+		final TestServer a = start(injector, "a");
+		try {
+			final TestServer b = start(injector, "b");
+			try {
+				assertEquals("x", a.get("/item/x").body);
+				assertEquals("y", b.get("/item/y").body);
+				assertEquals("2", a.get("/count").body);
+				assertEquals("2", b.get("/count").body);
+			} finally {
+				b.stop();
+			}
+		} finally {
+			a.stop();
+		}
+	}
+
+}
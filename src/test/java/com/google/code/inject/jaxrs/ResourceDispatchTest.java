@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static org.apache.cxf.phase.PhaseInterceptorChain.getCurrentMessage;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.model.wadl.WadlGenerator;
+import org.junit.Test;
+
+import com.google.inject.Guice;
+
+/**
+ * Compares the dispatch of the indexed server with the one of a plain CXF
+ * server publishing the same resources.
+ */
+public class ResourceDispatchTest {
+
+	private static String operation() {
+		return (String) getCurrentMessage().getExchange().get(
+				"org.apache.cxf.resource.operation.name");
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class RootResource {
+		@GET
+		public String get() {
+			return "root " + operation();
+		}
+
+		@GET
+		@Path("other/{x}")
+		public String other(@PathParam("x") String x) {
+			return "other " + x + " " + operation();
+		}
+	}
+
+	@Path("/books")
+	@Produces("text/plain")
+	public static class BooksResource {
+		@GET
+		public String list() {
+			return "books " + operation();
+		}
+
+		@GET
+		@Path("{id}")
+		public String book(@PathParam("id") String id) {
+			return "book " + id + " " + operation();
+		}
+	}
+
+	@Path("/books/special")
+	@Produces("text/plain")
+	public static class SpecialResource {
+		@GET
+		public String get() {
+			return "special " + operation();
+		}
+	}
+
+	@Path("/{kind}/items")
+	@Produces("text/plain")
+	public static class ItemsResource {
+		@GET
+		public String get(@PathParam("kind") String kind) {
+			return "items " + kind + " " + operation();
+		}
+	}
+
+	@Path("/odd.name-1")
+	@Produces("text/plain")
+	public static class OddResource {
+		@GET
+		public String get() {
+			return "odd " + operation();
+		}
+	}
+
+	@Path("/a+b")
+	@Produces("text/plain")
+	public static class PlusResource {
+		@GET
+		public String get() {
+			return "plus " + operation();
+		}
+	}
+
+	@Provider
+	public static class Wadl extends WadlGenerator {
+	}
+
+	private static final String[] PATHS = { "/", "/books", "/books/",
+			"/books/7", "/books/special", "/books/special/x", "/books/items",
+			"/other/items", "/other/x", "/other/x/y", "/odd.name-1",
+			"/odd.name-1/z", "/a+b", "/a%2Bb", "/Books", "/%62ooks/7",
+			"/books;m=1/7", "/books//7", "//books", "/nothing/here" };
+
+	private static TestServer start(final Class<?>... resources)
+			throws Exception {
+		return TestServer.start(Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				for (final Class<?> resource : resources)
+					publish(resource);
+			}
+		}));
+	}
+
+	private static void assertDispatchedLikeWithoutIndex(
+			Class<?>... resources) throws Exception {
+		final TestServer indexed = start(resources);
+		final JAXRSServerFactoryBean bean = new JAXRSServerFactoryBean();
+		bean.setResourceClasses(resources);
+		final TestServer plain = TestServer.start(bean);
+		try {
+			for (final String path : PATHS) {
+				final TestServer.Reply expected = plain.get(path);
+				final TestServer.Reply actual = indexed.get(path);
+				assertEquals(path, expected.status, actual.status);
+				if (expected.status == 200)
+					assertEquals(path, expected.body, actual.body);
+			}
+		} finally {
+			indexed.stop();
+			plain.stop();
+		}
+	}
+
+	@Test
+	public void requestsAreDispatchedLikeWithoutTheIndex() throws Exception {
+		assertDispatchedLikeWithoutIndex(RootResource.class,
+				BooksResource.class, SpecialResource.class,
+				ItemsResource.class, OddResource.class, PlusResource.class);
+	}
+
+	@Test
+	public void singleCandidatesKeepTheOperationName() throws Exception {
+		assertDispatchedLikeWithoutIndex(BooksResource.class,
+				SpecialResource.class, OddResource.class);
+	}
+
+	@Test
+	public void requestHandlersSeeAllResources() throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(new CXFServerModule() {
+					@Override
+					protected void configure() {
+						provide(Wadl.class);
+						publish(BooksResource.class);
+						publish(OddResource.class);
+						publish(ItemsResource.class);
+					}
+				}));
+		try {
+			final String wadl = server.get("/?_wadl").body;
+			assertTrue(wadl, wadl.contains("path=\"/books\""));
+			assertTrue(wadl, wadl.contains("path=\"/odd.name-1\""));
+			assertTrue(wadl, wadl.contains("path=\"/{kind}/items\""));
+		} finally {
+			server.stop();
+		}
+	}
+
+}
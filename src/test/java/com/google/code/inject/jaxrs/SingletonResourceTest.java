@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.ProvisionException;
+import com.google.inject.Singleton;
+import com.google.inject.spi.Message;
+
+public class SingletonResourceTest {
+
+	static final AtomicInteger created = new AtomicInteger();
+
+	@Path("/single")
+	@Produces("text/plain")
+	@Singleton
+	public static class SingleResource {
+		@Context
+		private UriInfo uriInfo;
+
+		public SingleResource() {
+			created.incrementAndGet();
+		}
+
+		@GET
+		@Path("{name}")
+		public String get(@PathParam("name") String name) {
+			return created.get() + " " + uriInfo.getPath();
+		}
+	}
+
+	@Path("/each")
+	@Produces("text/plain")
+	public static class EachResource {
+		private final int id = created.incrementAndGet();
+
+		@GET
+		public String get() {
+			return String.valueOf(id);
+		}
+	}
+
+	@RequestScope
+	public static class Item {
+	}
+
+	@Path("/broken")
+	@Singleton
+	public static class BrokenResource {
+		@Inject
+		Item item;
+
+		@GET
+		public String get() {
+			return "broken";
+		}
+	}
+
+	@Test
+	public void singletonResourcesAreCreatedOnce() throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(new CXFServerModule() {
+					@Override
+					protected void configure() {
+						publish(SingleResource.class);
+					}
+				}));
+		try {
+			final int before = created.get();
+			assertEquals(before + " single/a", server.get("/single/a").body);
+			assertEquals(before + " single/b", server.get("/single/b").body);
+			assertEquals(before, created.get());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void otherResourcesAreCreatedPerRequest() throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(new CXFServerModule() {
+					@Override
+					protected void configure() {
+						publish(EachResource.class);
+					}
+				}));
+		try {
+			final int first = Integer.parseInt(server.get("/each").body);
+			assertEquals(String.valueOf(first + 1), server.get("/each").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void singletonsMustNotDependOnRequestScopedObjects() {
+		final Injector injector = Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().enableCustomScopes();
+				publish(BrokenResource.class);
+			}
+		});
+		try {
+			injector.getInstance(JAXRSServerFactoryBean.class);
+			fail();
+		} catch (final ProvisionException e) {
+			boolean reported = false;
+			for (final Message message : e.getErrorMessages())
+				reported |= message.getMessage().contains(
+						"inject a Provider instead");
+			assertTrue(reported);
+		}
+	}
+
+}
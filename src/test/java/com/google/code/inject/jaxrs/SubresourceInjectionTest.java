@@ -0,0 +1,224 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import static com.google.code.inject.jaxrs.scope.CXFScopes.REQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.ProvisionException;
+import com.google.inject.Singleton;
+
+public class SubresourceInjectionTest {
+
+	public static abstract class Book {
+		@GET
+		public abstract String get();
+	}
+
+	public static class BookImpl extends Book {
+		@LocatorParam("id")
+		String id;
+
+		@Override
+		public String get() {
+			return id;
+		}
+	}
+
+	public static class Page {
+		@LocatorParam("n")
+		int n;
+	}
+
+	@Singleton
+	public static class Shelf {
+		@LocatorParam("id")
+		String id;
+	}
+
+	public static abstract class Catalogue {
+	}
+
+	@Singleton
+	public static class SharedCatalogue extends Catalogue {
+		@LocatorParam("section")
+		String section;
+	}
+
+	public static class Index {
+		@GET
+		public String get() {
+			return "index";
+		}
+	}
+
+	@Path("/")
+	public static class LibraryResource {
+		@Injected
+		@Path("book/{id}")
+		public Book book(@PathParam("id") String id) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Injected
+		@Path("page")
+		public Page page(@QueryParam("n") Integer n) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Injected
+		@Path("chapter/{n}")
+		public Page chapter(@QueryParam("title") String title,
+				@PathParam("n") Integer n) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Injected
+		@Path("shelf/{id}")
+		public Shelf shelf(@PathParam("id") String id) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Injected
+		@Path("catalogue")
+		public Catalogue catalogue(@QueryParam("section") String section) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Injected
+		@Path("index")
+		public Index index() {
+			throw new UnsupportedOperationException();
+		}
+
+		@GET
+		@Path("indexes")
+		public String indexes() {
+			return String.valueOf(index() == index());
+		}
+	}
+
+	private Injector injector;
+	private LibraryResource library;
+
+	@Before
+	public void setUp() {
+		injector = Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().enableCustomScopes().withSubresourcesInjection();
+				publish(LibraryResource.class);
+			}
+		}, new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Book.class).to(BookImpl.class);
+				bind(Catalogue.class).to(SharedCatalogue.class);
+				bind(Index.class).in(REQUEST);
+			}
+		});
+		library = injector.getInstance(LibraryResource.class);
+	}
+
+	@Test
+	public void locatorParamsAreSetOnTheBoundImplementation() throws Exception {
+		final Book first = library.book("a");
+		final Book second = library.book("b");
+
+		assertNotSame(first, second);
+		assertEquals("a", first.get());
+		assertEquals("b", second.get());
+
+		final TestServer server = TestServer.start(injector);
+		try {
+			assertEquals("42", server.get("/book/42").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void primitiveFieldsAreSetFromWrappers() {
+		assertEquals(3, library.page(3).n);
+	}
+
+	@Test
+	public void locatorsOfTheSameTypeKeepTheirParameters() {
+		assertEquals(3, library.page(3).n);
+		assertEquals(5, library.chapter("x", 5).n);
+		assertEquals(4, library.page(4).n);
+		assertEquals(6, library.chapter("y", 6).n);
+	}
+
+	@Test
+	public void nullForPrimitiveFieldIsReported() {
+		try {
+			library.page(null);
+			fail("null assigned to a primitive");
+		} catch (final ProvisionException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("primitive"));
+		}
+	}
+
+	@Test
+	public void scopedSubresourcesAreRejected() {
+		for (int i = 0; i < 2; i++) {
+			try {
+				library.shelf("a");
+				fail("locator params written to a singleton");
+			} catch (final ProvisionException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("unscoped"));
+			}
+		}
+	}
+
+	@Test
+	public void subresourcesLinkedToScopedTypesAreRejected() {
+		try {
+			library.catalogue("a");
+			fail("locator params written to a linked singleton");
+		} catch (final ProvisionException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("unscoped"));
+		}
+	}
+
+	@Test
+	public void scopedSubresourcesWithoutLocatorParamsAreServed()
+			throws Exception {
+		final TestServer server = TestServer.start(injector);
+		try {
+			assertEquals("index", server.get("/index").body);
+			assertEquals("true", server.get("/indexes").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+}
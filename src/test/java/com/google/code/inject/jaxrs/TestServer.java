@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+
+import com.google.inject.Injector;
+
+/**
+ * Server created from a <tt>JAXRSServerFactoryBean</tt> on a free local
+ * port, with a minimal HTTP client.
+ */
+public final class TestServer {
+
+	/** Response of the server */
+	public static final class Reply {
+		public final int status;
+		public final String contentType;
+		public final String body;
+
+		Reply(int status, String contentType, String body) {
+			this.status = status;
+			this.contentType = contentType;
+			this.body = body;
+		}
+
+		@Override
+		public String toString() {
+			return status + " " + body;
+		}
+	}
+
+	private static int freePort() throws IOException {
+		final ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Start the server of the unqualified <tt>JAXRSServerFactoryBean</tt>
+	 */
+	public static TestServer start(Injector injector) throws IOException {
+		return start(injector.getInstance(JAXRSServerFactoryBean.class));
+	}
+
+	/**
+	 * Start a server, the configured address is replaced with a local one
+	 */
+	public static TestServer start(JAXRSServerFactoryBean bean)
+			throws IOException {
+		final String address = "http://localhost:" + freePort();
+		bean.setAddress(address);
+		return new TestServer(bean.create(), address);
+	}
+
+	private final Server server;
+	private final String address;
+
+	private TestServer(Server server, String address) {
+		this.server = server;
+		this.address = address;
+	}
+
+	public Server getServer() {
+		return server;
+	}
+
+	public Reply get(String path) throws IOException {
+		return send("GET", path, null, null);
+	}
+
+	public Reply post(String path, String contentType, String body)
+			throws IOException {
+		return send("POST", path, contentType, body);
+	}
+
+	public Reply send(String method, String path, String contentType,
+			String body) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(
+				address + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setReadTimeout(30000);
+		if (body != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", contentType);
+			final OutputStream out = connection.getOutputStream();
+			out.write(body.getBytes(StandardCharsets.UTF_8));
+			out.close();
+		}
+
+		final int status = connection.getResponseCode();
+		final InputStream in = (status < 400) ? connection.getInputStream()
+				: connection.getErrorStream();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if (in != null) {
+			final byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				bytes.write(buffer, 0, read);
+			in.close();
+		}
+		return new Reply(status, connection.getContentType(), new String(
+				bytes.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	public void stop() {
+		server.stop();
+		server.destroy();
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.Injected;
+import com.google.code.inject.jaxrs.LocatorParam;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class FlightRecorderEventsTest {
+
+	private static final String PREFIX = "com.google.code.inject.jaxrs.";
+
+	@RequestScope
+	public static class Item {
+	}
+
+	@Produces("text/plain")
+	public static class Page {
+		@LocatorParam("n")
+		String n;
+
+		@GET
+		public String get() {
+			return n;
+		}
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class BookResource {
+		@Inject
+		private Provider<Item> item;
+
+		@GET
+		public String get() {
+			item.get();
+			return "book";
+		}
+
+		@Injected
+		@Path("page/{n}")
+		public Page page(@PathParam("n") String n) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static Map<String, RecordedEvent> record() throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(new CXFServerModule() {
+					@Override
+					protected void configure() {
+						serve().enableCustomScopes()
+								.withSubresourcesInjection();
+						publish(BookResource.class);
+					}
+				}));
+		final Recording recording = new Recording();
+		final File file = File.createTempFile("guice-cxf", ".jfr");
+		try {
+			for (final String name : new String[] { "Scope", "Provision",
+					"ResourceCreation", "SubresourceCreation" })
+				recording.enable(PREFIX + name).withThreshold(Duration.ZERO);
+			recording.start();
+			assertEquals("book", server.get("/").body);
+			assertEquals("7", server.get("/page/7").body);
+			recording.stop();
+			recording.dump(file.toPath());
+
+			final List<RecordedEvent> events = RecordingFile
+					.readAllEvents(file.toPath());
+			// events of both requests come back in no particular order, keep
+			// the earliest of each type, i.e. the one of the first request
+			final Map<String, RecordedEvent> byName = new HashMap<String, RecordedEvent>();
+			for (final RecordedEvent event : events) {
+				final String name = event.getEventType().getName();
+				final RecordedEvent earliest = byName.get(name);
+				if (earliest == null
+						|| event.getStartTime().isBefore(earliest.getStartTime()))
+					byName.put(name, event);
+			}
+			return byName;
+		} finally {
+			recording.close();
+			file.delete();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void requestLifecycleIsRecorded() throws Exception {
+		final Map<String, RecordedEvent> events = record();
+
+		final RecordedEvent scope = events.get(PREFIX + "Scope");
+		assertTrue(events.keySet().toString(), scope != null);
+		assertEquals(BookResource.class.getName(),
+				scope.getClass("resourceClass").getName());
+
+		final RecordedEvent provision = events.get(PREFIX + "Provision");
+		assertTrue(events.keySet().toString(), provision != null);
+		assertTrue(provision.getString("key"),
+				provision.getString("key").contains(Item.class.getName()));
+
+		final RecordedEvent resource = events.get(PREFIX
+				+ "ResourceCreation");
+		assertTrue(events.keySet().toString(), resource != null);
+		assertEquals(BookResource.class.getName(),
+				resource.getClass("resourceClass").getName());
+
+		final RecordedEvent subresource = events.get(PREFIX
+				+ "SubresourceCreation");
+		assertTrue(events.keySet().toString(), subresource != null);
+		assertEquals(Page.class.getName(),
+				subresource.getClass("subresourceClass").getName());
+		assertTrue(subresource.getString("locator"),
+				subresource.getString("locator").contains("page"));
+	}
+
+}
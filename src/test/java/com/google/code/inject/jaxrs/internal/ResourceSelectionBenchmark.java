@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.jaxrs.impl.MetadataMap;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.model.URITemplate;
+import org.apache.cxf.jaxrs.utils.JAXRSUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of selecting the root resource of a request among all the resources
+ * of a server, as CXF does, and among the candidates of the
+ * {@link ResourceIndex}.
+ * <p>
+ * Every resource has a path of the form <tt>/api/r{n}/{id}</tt>, so the
+ * index narrows the selection to a single candidate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class ResourceSelectionBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int resources;
+
+	private List<ClassResourceInfo> all;
+	private ResourceIndex index;
+	private String path;
+	private Message message;
+
+	@Setup
+	public void setUp() {
+		all = new ArrayList<ClassResourceInfo>(resources);
+		for (int i = 0; i < resources; i++) {
+			final ClassResourceInfo cri = new ClassResourceInfo(Object.class,
+					true);
+			cri.setURITemplate(URITemplate.createTemplate("/api/r" + i
+					+ "/{id}"));
+			all.add(cri);
+		}
+		index = new ResourceIndex(all);
+		path = "/api/r" + (resources / 2) + "/42";
+		message = new MessageImpl();
+		final Exchange exchange = new ExchangeImpl();
+		message.setExchange(exchange);
+		exchange.setInMessage(message);
+		// selection only reads optional endpoint properties
+		exchange.put(Endpoint.class, (Endpoint) Proxy.newProxyInstance(
+				Endpoint.class.getClassLoader(),
+				new Class<?>[] { Endpoint.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						return null;
+					}
+				}));
+
+		if (selectAll() != selectIndexed())
+			throw new IllegalStateException("Index selected another resource");
+	}
+
+	@Benchmark
+	public ClassResourceInfo selectAll() {
+		return JAXRSUtils.selectResourceClass(all, path,
+				new MetadataMap<String, String>(), message);
+	}
+
+	@Benchmark
+	public ClassResourceInfo selectIndexed() {
+		return JAXRSUtils.selectResourceClass(index.candidates(path), path,
+				new MetadataMap<String, String>(), message);
+	}
+
+}
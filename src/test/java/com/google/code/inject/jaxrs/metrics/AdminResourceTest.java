@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.Guice;
+
+public class AdminResourceTest {
+
+	@Path("/hello")
+	@Produces("text/plain")
+	public static class HelloResource {
+		@GET
+		public String hello() {
+			return "hello";
+		}
+	}
+
+	private TestServer server;
+
+	@Before
+	public void start() throws Exception {
+		server = TestServer.start(Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().withLatencyHistograms().withAdminEndpoint("/_admin");
+				publish(HelloResource.class).pooled(2);
+			}
+		}));
+		assertEquals("hello", server.get("/hello").body);
+	}
+
+	@After
+	public void stop() {
+		server.stop();
+	}
+
+	@Test
+	public void metricNamesAreNamespaced() throws Exception {
+		final String metrics = server.get("/_admin/metrics").body;
+		for (final String line : metrics.split("\n")) {
+			final String name = line.startsWith("# ") ? line.split(" ")[2]
+					: line;
+			assertTrue(line, name.startsWith("guice_cxf_"));
+		}
+		assertTrue(metrics,
+				metrics.contains("guice_cxf_request_duration_seconds{"));
+		assertTrue(metrics,
+				metrics.contains("guice_cxf_resource_pool_timeouts_total{"));
+	}
+
+	@Test
+	public void configurationListsTheResources() throws Exception {
+		final String config = server.get("/_admin/config").body;
+		assertTrue(config, config.contains("\"class\":\""
+				+ HelloResource.class.getName() + "\""));
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+public class LatencyMetricsTest {
+
+	@Path("/hello")
+	@Produces("text/plain")
+	public static class HelloResource {
+		@GET
+		public String hello() {
+			return "hello";
+		}
+
+		@POST
+		public String echo(String body) {
+			return body;
+		}
+
+		@GET
+		@Path("conflict")
+		public String conflict() {
+			throw new WebApplicationException(409);
+		}
+	}
+
+	/**
+	 * Requests are recorded once the response was sent, possibly after the
+	 * client read it
+	 */
+	private static Map<String, OperationLatencySnapshot> byOperation(
+			LatencyMetrics metrics, int requests) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (count(metrics) < requests
+				&& System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+
+
+		final Map<String, OperationLatencySnapshot> map = new HashMap<String, OperationLatencySnapshot>();
+		for (final OperationLatencySnapshot snapshot : metrics.snapshot())
+			map.put(snapshot.getOperation(), snapshot);
+		return map;
+	}
+
+	private static long count(LatencyMetrics metrics) {
+		long count = 0;
+		for (final OperationLatencySnapshot snapshot : metrics.snapshot())
+			count += snapshot.getLatency().getCount();
+		return count;
+	}
+
+	@Test
+	public void requestsAreRecordedPerOperation() throws Exception {
+		final Injector injector = Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().withLatencyHistograms();
+				publish(HelloResource.class);
+			}
+		});
+		final TestServer server = TestServer.start(injector);
+		try {
+			for (int i = 0; i < 3; i++)
+				assertEquals("hello", server.get("/hello").body);
+			assertEquals("0123456789",
+					server.post("/hello", "text/plain", "0123456789").body);
+			assertEquals(409, server.get("/hello/conflict").status);
+			assertEquals(404, server.get("/missing").status);
+		} finally {
+			server.stop();
+		}
+
+		final Map<String, OperationLatencySnapshot> operations = byOperation(
+				injector.getInstance(LatencyMetrics.class), 6);
+		final String prefix = HelloResource.class.getName() + ".";
+
+		final OperationLatencySnapshot hello = operations.get("GET " + prefix
+				+ "hello");
+		assertTrue(operations.keySet().toString(), hello != null);
+		assertEquals("GET", hello.getHttpMethod());
+		assertEquals(HelloResource.class, hello.getResourceClass());
+		assertEquals("hello", hello.getMethod().getName());
+		assertEquals(3, hello.getLatency().getCount());
+		assertEquals(3, hello.getResponses(2));
+		assertEquals(3 * "hello".length(), hello.getBytesOut());
+
+		final OperationLatencySnapshot echo = operations.get("POST " + prefix
+				+ "echo");
+		assertEquals(1, echo.getLatency().getCount());
+		assertEquals(10, echo.getBytesIn());
+
+		final OperationLatencySnapshot conflict = operations.get("GET "
+				+ prefix + "conflict");
+		assertEquals(1, conflict.getResponses(4));
+		assertEquals(0, conflict.getResponses(2));
+
+		final OperationLatencySnapshot unmatched = operations
+				.get(LatencyMetrics.UNMATCHED);
+		assertEquals(1, unmatched.getResponses(4));
+		assertEquals(null, unmatched.getResourceClass());
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static com.google.inject.name.Names.named;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+
+public class MBeansTest {
+
+	public interface Counter {
+		long getCount();
+	}
+
+	@Path("/hello")
+	@Produces("text/plain")
+	public static class HelloResource {
+		@GET
+		public String hello() {
+			return "hello";
+		}
+	}
+
+	private static final MBeanServer platform = ManagementFactory
+			.getPlatformMBeanServer();
+
+	private static Counter counter(final long count) {
+		return new Counter() {
+			public long getCount() {
+				return count;
+			}
+		};
+	}
+
+	private static CXFServerModule hello(String name) {
+		return new CXFServerModule(named(name)) {
+			@Override
+			protected void configure() {
+				serve().withLatencyHistograms();
+				publish(HelloResource.class);
+			}
+		};
+	}
+
+	private static TestServer start(Injector injector, String name)
+			throws Exception {
+		return TestServer.start(injector.getInstance(Key.get(
+				JAXRSServerFactoryBean.class, named(name))));
+	}
+
+	private static Set<ObjectName> latency(String name) throws Exception {
+		final String server = named(name).toString();
+		return platform.queryNames(new ObjectName(MBeans.DOMAIN + ":server="
+				+ ObjectName.quote(server) + ",type=Latency,*"), null);
+	}
+
+	/**
+	 * Requests are recorded once the response was sent, possibly after the
+	 * client read it
+	 */
+	private static long requests(String name, long expected)
+			throws Exception {
+		final long deadline = System.currentTimeMillis() + 10000;
+		long requests = 0;
+		do {
+			requests = 0;
+			for (final ObjectName mbean : latency(name))
+				requests += (Long) platform.getAttribute(mbean, "Requests");
+			if (requests < expected)
+				Thread.sleep(10);
+		} while (requests < expected && System.currentTimeMillis() < deadline);
+		return requests;
+	}
+
+	@Test
+	public void serversRegisterTheirOwnMBeansUntilStopped() throws Exception {
+		final Injector injector = Guice.createInjector(hello("a"),
+				hello("b"));
+		final TestServer a = start(injector, "a");
+		final TestServer b = start(injector, "b");
+		try {
+			assertEquals("hello", a.get("/hello").body);
+			assertEquals("hello", b.get("/hello").body);
+			assertEquals("hello", b.get("/hello").body);
+
+			assertEquals(1, requests("a", 1));
+			assertEquals(2, requests("b", 2));
+			assertEquals(1, latency("a").size());
+			assertEquals(1, latency("b").size());
+		} finally {
+			a.stop();
+			try {
+				assertTrue(latency("a").isEmpty());
+				assertEquals(1, latency("b").size());
+			} finally {
+				b.stop();
+			}
+		}
+		assertTrue(latency("b").isEmpty());
+	}
+
+	@Test
+	public void registrationReplacesStaleMBeans() throws Exception {
+		final MBeans stale = MBeans.forServer("replaced");
+		final MBeans current = MBeans.forServer("replaced");
+		final ObjectName name = stale.register(counter(1), Counter.class,
+				"type=Counter");
+		assertEquals(name, current.register(counter(2), Counter.class,
+				"type=Counter"));
+		assertEquals(2L, platform.getAttribute(name, "Count"));
+
+		stale.unregister();
+		assertEquals(2L, platform.getAttribute(name, "Count"));
+
+		current.unregister();
+		assertTrue(!platform.isRegistered(name));
+		assertEquals(null, current.register(counter(3), Counter.class,
+				"type=Counter"));
+		assertTrue(!platform.isRegistered(name));
+	}
+
+}
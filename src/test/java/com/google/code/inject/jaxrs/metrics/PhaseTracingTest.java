@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.metrics;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.jaxrs.interceptor.JAXRSInInterceptor;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+public class PhaseTracingTest {
+
+	@Path("/hello")
+	@Produces("text/plain")
+	public static class HelloResource {
+		@GET
+		public String hello() {
+			return "hello";
+		}
+	}
+
+	private static final int REQUESTS = 5;
+
+	private static Injector injector(final long slowThresholdSeconds) {
+		return Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().withPhaseTracing(1, slowThresholdSeconds, SECONDS);
+				publish(HelloResource.class);
+			}
+		});
+	}
+
+	private static void send(Injector injector) throws Exception {
+		final TestServer server = TestServer.start(injector);
+		try {
+			for (int i = 0; i < REQUESTS; i++)
+				assertEquals("hello", server.get("/hello").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Traces are completed once the response was sent, possibly after the
+	 * client read it
+	 */
+	private static HistogramSnapshot await(PhaseTracing tracing, String phase)
+			throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 10000;
+		HistogramSnapshot snapshot;
+		while (((snapshot = tracing.getPhaseTimings().get(phase)) == null || snapshot
+				.getCount() < REQUESTS)
+				&& System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertTrue(tracing.getPhaseTimings().keySet().toString(),
+				snapshot != null);
+		return snapshot;
+	}
+
+	@Test
+	public void sampledRequestsAreTimedPerPhaseAndInterceptor()
+			throws Exception {
+		final Injector injector = injector(60);
+		send(injector);
+
+		final PhaseTracing tracing = injector.getInstance(PhaseTracing.class);
+		assertEquals(REQUESTS, await(tracing, "in:unmarshal").getCount());
+		assertEquals(REQUESTS, await(tracing, "in:invoke").getCount());
+
+		final Map<String, HistogramSnapshot> interceptors = tracing
+				.getInterceptorTimings();
+		final HistogramSnapshot selection = interceptors
+				.get(JAXRSInInterceptor.class.getName());
+		assertTrue(interceptors.keySet().toString(), selection != null);
+		assertEquals(REQUESTS, selection.getCount());
+	}
+
+	@Test
+	public void slowRequestsAreLogged() throws Exception {
+		final List<String> logged = Collections
+				.synchronizedList(new ArrayList<String>());
+		final Handler handler = new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				logged.add(record.getMessage());
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		final Logger logger = Logger.getLogger(PhaseTracing.class.getName());
+		logger.addHandler(handler);
+		try {
+			final Injector injector = injector(0);
+			send(injector);
+			await(injector.getInstance(PhaseTracing.class), "in:invoke");
+		} finally {
+			logger.removeHandler(handler);
+		}
+
+		assertTrue(logged.toString(), logged.size() >= REQUESTS);
+		for (final String message : logged)
+			assertTrue(message, message.startsWith("Slow request GET ")
+					&& message.contains(JAXRSInInterceptor.class.getName()));
+	}
+
+}
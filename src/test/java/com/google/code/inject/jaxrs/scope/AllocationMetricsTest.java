@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+
+public class AllocationMetricsTest {
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class AllocatingResource {
+		@GET
+		public String allocate() {
+			return String.valueOf(new byte[4096].length);
+		}
+	}
+
+	private static Injector server(final boolean sampled) {
+		return Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				if (sampled)
+					serve().withAllocationSampling(1);
+				publish(AllocatingResource.class);
+			}
+		});
+	}
+
+	private static void get(Injector injector, int requests) throws Exception {
+		final TestServer server = TestServer.start(injector);
+		try {
+			for (int i = 0; i < requests; i++)
+				assertEquals("4096", server.get("/").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static OperationAllocationStatistics allocateStatistics(
+			Injector injector) {
+		final Collection<OperationAllocationStatistics> operations = injector
+				.getInstance(AllocationMetrics.class).getOperationStatistics();
+		assertEquals(1, operations.size());
+		final OperationAllocationStatistics stats = operations.iterator()
+				.next();
+		assertEquals(AllocatingResource.class.getName() + ".allocate",
+				stats.getOperation());
+		return stats;
+	}
+
+	@Test
+	public void metricsBelongToTheirInjector() throws Exception {
+		final Injector measured = server(true);
+		final Injector other = server(true);
+		final Injector unmeasured = server(false);
+
+		get(measured, 2);
+		get(unmeasured, 1);
+		get(other, 1);
+
+		assertEquals(2, allocateStatistics(measured).getSamples());
+		assertTrue(allocateStatistics(measured).getTotalBytes() >= 2 * 4096);
+		assertEquals(1, allocateStatistics(other).getSamples());
+		assertNull(unmeasured.getExistingBinding(Key
+				.get(AllocationMetrics.class)));
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.code.inject.jaxrs.scope.CXFScopes.continueRequest;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class ContinuationTest {
+
+	@RequestScope
+	public static class Item {
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class ChatResource {
+		private static final ExecutorService backend = Executors
+				.newCachedThreadPool();
+
+		@Inject
+		private ContinuationProvider continuations;
+
+		@Inject
+		private Provider<Item> item;
+
+		private String id() {
+			return String.valueOf(System.identityHashCode(item.get()));
+		}
+
+		/** The pattern from the README */
+		@GET
+		@Path("poll")
+		public String poll() throws Exception {
+			final Continuation continuation = continuations.getContinuation();
+			if (continuation.isNew()) {
+				final Callable<String> fetch = continueRequest(new Callable<String>() {
+					@Override
+					public String call() {
+						return id();
+					}
+				});
+				backend.submit(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							continuation.setObject(fetch.call());
+						} catch (final Exception e) {
+							continuation.setObject(e);
+						} finally {
+							continuation.resume();
+						}
+					}
+				});
+				id();
+				continuation.suspend(30000);
+				return null;
+			}
+			if (continuation.getObject() instanceof Exception)
+				throw (Exception) continuation.getObject();
+			return continuation.getObject() + " " + id();
+		}
+
+		/** Resumes while the callable is still in the scope */
+		@GET
+		@Path("early")
+		public String early() throws Exception {
+			final Continuation continuation = continuations.getContinuation();
+			if (continuation.isNew()) {
+				backend.submit(continueRequest(new Callable<Void>() {
+					@Override
+					public Void call() {
+						continuation.setObject(id());
+						continuation.resume();
+						id();
+						return null;
+					}
+				}));
+				continuation.suspend(30000);
+				return null;
+			}
+			return continuation.getObject() + " " + id();
+		}
+	}
+
+	private TestServer server;
+	private ExecutorService clients;
+
+	@Before
+	public void setUp() throws Exception {
+		server = TestServer.start(Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().enableCustomScopes();
+				publish(ChatResource.class);
+			}
+		}));
+		clients = Executors.newFixedThreadPool(8);
+	}
+
+	@After
+	public void tearDown() {
+		clients.shutdownNow();
+		server.stop();
+	}
+
+	private void assertScopeHandedOff(final String path) throws Exception {
+		final List<Future<TestServer.Reply>> replies = new ArrayList<Future<TestServer.Reply>>();
+		for (int i = 0; i < 50; i++)
+			replies.add(clients.submit(new Callable<TestServer.Reply>() {
+				@Override
+				public TestServer.Reply call() throws Exception {
+					return server.get(path);
+				}
+			}));
+
+		for (final Future<TestServer.Reply> reply : replies) {
+			final TestServer.Reply r = reply.get();
+			assertEquals(r.toString(), 200, r.status);
+			final String[] ids = r.body.split(" ");
+			assertEquals(r.body, ids[0], ids[1]);
+		}
+	}
+
+	@Test
+	public void workerContinuesTheRequestScope() throws Exception {
+		assertScopeHandedOff("/poll");
+	}
+
+	@Test
+	public void resumingBeforeTheWorkerLeftWaitsForIt() throws Exception {
+		assertScopeHandedOff("/early");
+	}
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.code.inject.jaxrs.scope.CXFScopes.bindToExchange;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+
+public class ExchangeBindingTest {
+
+	private static final Key<String> TENANT = Key.get(String.class,
+			Names.named("tenant"));
+
+	private static final ExchangeAccessor<String> TENANT_PROPERTY = new ExchangeAccessor<String>() {
+		@Override
+		public String get(Exchange exchange) {
+			return (String) exchange.getInMessage().get("tenant");
+		}
+	};
+
+	@RequestScope
+	public static class Item {
+		final Message message;
+
+		@Inject
+		Item(Message message) {
+			this.message = message;
+		}
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class TenantResource {
+		@Inject
+		@Named("tenant")
+		private Provider<String> tenant;
+
+		@Inject
+		private Provider<Message> message;
+
+		@Inject
+		private Provider<Item> item;
+
+		@GET
+		@Path("tenant")
+		public String tenant() {
+			message.get().put("tenant", "a");
+			final String first = tenant.get();
+			message.get().put("tenant", "b");
+			return first + tenant.get();
+		}
+
+		@GET
+		@Path("item")
+		public String item() {
+			final Item first = item.get();
+			return String.valueOf(first == item.get()
+					&& first.message == message.get());
+		}
+	}
+
+	@Test
+	public void valuesAreReadOnEveryProvision() throws Exception {
+		final TestServer server = TestServer.start(Guice.createInjector(
+				new CXFServerModule() {
+					@Override
+					protected void configure() {
+						serve().enableCustomScopes();
+						publish(TenantResource.class);
+					}
+				}, new CXFScopes.ExchangeContextModule(),
+				new AbstractModule() {
+					@Override
+					protected void configure() {
+						bindToExchange(binder(), TENANT, TENANT_PROPERTY);
+					}
+				}));
+		try {
+			assertEquals("ab", server.get("/tenant").body);
+			assertEquals("ab", server.get("/tenant").body);
+			assertEquals("true", server.get("/item").body);
+			assertEquals("true", server.get("/item").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void injectorsMayBindTheBusThemselves() {
+		final Bus bus = BusFactory.newInstance().createBus();
+		try {
+			final Injector injector = Guice.createInjector(
+					new CXFServerModule() {
+						@Override
+						protected void configure() {
+							serve().enableCustomScopes();
+							publish(TenantResource.class);
+						}
+					}, new AbstractModule() {
+						@Override
+						protected void configure() {
+							bind(Bus.class).toInstance(bus);
+							bindToExchange(binder(), Key.get(Message.class),
+									CXFScopes.IN_MESSAGE);
+							bindToExchange(binder(), TENANT, TENANT_PROPERTY);
+						}
+					});
+			assertSame(bus, injector.getInstance(Bus.class));
+		} finally {
+			bus.shutdown(true);
+		}
+	}
+
+	private static String tenantIn(Injector injector, final Exchange exchange) {
+		final Provider<String> tenant = injector.getProvider(TENANT);
+		final String[] read = new String[1];
+		new GuiceInterceptorWrapper(new AbstractPhaseInterceptor<Message>(
+				Phase.INVOKE) {
+			@Override
+			public void handleMessage(Message message) {
+				read[0] = tenant.get();
+			}
+		}).handleMessage(exchange.getInMessage());
+		return read[0];
+	}
+
+	@Test
+	public void accessorsBelongToTheirInjector() {
+		final Injector first = Guice.createInjector(new CXFScopes.Module(),
+				new AbstractModule() {
+					@Override
+					protected void configure() {
+						bindToExchange(binder(), TENANT, TENANT_PROPERTY);
+					}
+				});
+		final Injector second = Guice.createInjector(new CXFScopes.Module(),
+				new AbstractModule() {
+					@Override
+					protected void configure() {
+						bindToExchange(binder(), TENANT,
+								new ExchangeAccessor<String>() {
+									@Override
+									public String get(Exchange exchange) {
+										return "fixed";
+									}
+								});
+					}
+				});
+
+		final Exchange exchange = new ExchangeImpl();
+		final Message message = new MessageImpl();
+		message.setExchange(exchange);
+		exchange.setInMessage(message);
+		message.put("tenant", "a");
+
+		assertEquals("a", tenantIn(first, exchange));
+		assertEquals("fixed", tenantIn(second, exchange));
+		assertTrue(second.getBinding(TENANT).getProvider().toString()
+				.contains("-ex"));
+	}
+
+}
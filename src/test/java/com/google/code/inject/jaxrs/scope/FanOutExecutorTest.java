@@ -0,0 +1,230 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class FanOutExecutorTest {
+
+	@RequestScope
+	public static class Item {
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class FanOutResource {
+		@Inject
+		@FanOut
+		private Provider<ExecutorService> fanOut;
+
+		@Inject
+		private Provider<Item> item;
+
+		@GET
+		public String shared() throws Exception {
+			final Item parent = item.get();
+			final List<Future<Item>> children = new ArrayList<Future<Item>>();
+			for (int i = 0; i < 10; i++)
+				children.add(fanOut.get().submit(new Callable<Item>() {
+					@Override
+					public Item call() {
+						return item.get();
+					}
+				}));
+			for (final Future<Item> child : children)
+				if (child.get() != parent)
+					return "different";
+			return "shared";
+		}
+	}
+
+	private ExecutorService pool;
+	private Exchange exchange;
+
+	@Before
+	public void setUp() {
+		pool = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	/** Executor of an exchange whose scope was entered */
+	private FanOutExecutor executor(int parallelism) {
+		exchange = new ExchangeImpl();
+		RequestScopeStore.of(exchange, new RequestScopeStore.Slots());
+		final FanOutExecutor executor = new FanOutExecutor(pool, exchange,
+				parallelism);
+		exchange.put(FanOutExecutor.class, executor);
+		return executor;
+	}
+
+	@Test
+	public void parallelismIsBounded() throws Exception {
+		final FanOutExecutor executor = executor(3);
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger max = new AtomicInteger();
+
+		final List<Future<?>> tasks = new ArrayList<Future<?>>();
+		for (int i = 0; i < 200; i++)
+			tasks.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					final int now = active.incrementAndGet();
+					int m;
+					while (now > (m = max.get()) && !max.compareAndSet(m, now))
+						;
+					Thread.yield();
+					active.decrementAndGet();
+				}
+			}));
+		for (final Future<?> task : tasks)
+			task.get(10, SECONDS);
+
+		assertTrue("max parallelism " + max, max.get() <= 3);
+	}
+
+	@Test
+	public void tasksSubmittedConcurrentlyAllRun() throws Exception {
+		final FanOutExecutor executor = executor(2);
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		final List<Future<List<Future<?>>>> submitters = new ArrayList<Future<List<Future<?>>>>();
+		for (int s = 0; s < 8; s++)
+			submitters.add(pool.submit(new Callable<List<Future<?>>>() {
+				@Override
+				public List<Future<?>> call() throws Exception {
+					start.await();
+					final List<Future<?>> tasks = new ArrayList<Future<?>>();
+					for (int i = 0; i < 500; i++)
+						tasks.add(executor.submit(new Runnable() {
+							@Override
+							public void run() {
+								runs.incrementAndGet();
+							}
+						}));
+					return tasks;
+				}
+			}));
+		start.countDown();
+
+		for (final Future<List<Future<?>>> submitter : submitters)
+			for (final Future<?> task : submitter.get())
+				task.get(10, SECONDS);
+		assertEquals(8 * 500, runs.get());
+	}
+
+	@Test
+	public void completionCancelsUnfinishedChildren() throws Exception {
+		final FanOutExecutor executor = executor(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+
+		final Future<?> running = executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (final InterruptedException e) {
+					interrupted.countDown();
+				}
+				return null;
+			}
+		});
+		final Future<?> queued = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+		assertTrue(started.await(10, SECONDS));
+
+		FanOutExecutor.completed(exchange);
+
+		assertTrue(running.isCancelled());
+		assertTrue(queued.isCancelled());
+		assertTrue(interrupted.await(10, SECONDS));
+		assertTrue(executor.awaitTermination(10, SECONDS));
+		try {
+			executor.submit(new Runnable() {
+				@Override
+				public void run() {
+				}
+			});
+			fail("task accepted after completion");
+		} catch (final RejectedExecutionException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void childrenShareTheRequestScope() throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(new CXFServerModule() {
+					@Override
+					protected void configure() {
+						serve().fanOutOn(ExecutorService.class, 4);
+						publish(FanOutResource.class);
+					}
+				}, new AbstractModule() {
+					@Override
+					protected void configure() {
+						bind(ExecutorService.class).toInstance(pool);
+					}
+				}));
+		try {
+			for (int i = 0; i < 20; i++)
+				assertEquals("shared", server.get("/").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.interceptor.ServiceInvokerInterceptor;
+import org.apache.cxf.message.Message;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.Guice;
+
+public class GuiceInterceptorFeatureTest {
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class HelloResource {
+		@GET
+		public String get() {
+			return "hello";
+		}
+	}
+
+	private static int count(List<Interceptor<? extends Message>> chain,
+			Class<?> type) {
+		int count = 0;
+		for (final Interceptor<? extends Message> interceptor : chain)
+			if (type.isInstance(interceptor))
+				count++;
+		return count;
+	}
+
+	@Test
+	public void wrapperReplacesTheInvokerOnceAtCreation() throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(new CXFServerModule() {
+					@Override
+					protected void configure() {
+						serve().enableCustomScopes();
+						publish(HelloResource.class);
+					}
+				}));
+		try {
+			final Endpoint endpoint = server.getServer().getEndpoint();
+			for (int i = 0; i < 3; i++) {
+				assertEquals("hello", server.get("/").body);
+				assertEquals(0, count(endpoint.getService().getInInterceptors(),
+						ServiceInvokerInterceptor.class));
+				assertEquals(1, count(endpoint.getInInterceptors(),
+						GuiceInterceptorWrapper.class));
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+}
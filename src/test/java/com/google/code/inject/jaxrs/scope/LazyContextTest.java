@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.cxf.jaxrs.impl.HttpHeadersImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class LazyContextTest {
+
+	@Path("/context")
+	@Produces("text/plain")
+	public static class ContextResource {
+		@Inject
+		private Provider<HttpHeaders> headers;
+
+		@Inject
+		private Provider<UriInfo> uriInfo;
+
+		@Inject
+		private Provider<Request> request;
+
+		@POST
+		@Path("{name}")
+		public String post(String body) {
+			return request.get().getMethod() + " "
+					+ uriInfo.get().getPathParameters().getFirst("name") + " "
+					+ headers.get().getRequestHeader("content-type").get(0)
+					+ " " + headers.get().getMediaType();
+		}
+
+		@GET
+		public String get() {
+			return request.get().getMethod() + " " + uriInfo.get().getPath();
+		}
+	}
+
+	private static Message message(Map<String, List<String>> headers) {
+		final Message message = new MessageImpl();
+		message.put(Message.PROTOCOL_HEADERS, headers);
+		return message;
+	}
+
+	@Test
+	public void headersReadLikeCXF() {
+		final Map<String, List<String>> headers = new HashMap<String, List<String>>();
+		headers.put("Accept", asList("text/plain"));
+		headers.put("X-Single", asList(" value "));
+		headers.put("X-List", asList("a, b"));
+		headers.put("X-Quoted", asList("\"a\""));
+		headers.put("X-Values", asList("a", "b"));
+		headers.put("Cookie", asList("a=b"));
+
+		final Message message = message(headers);
+		final HttpHeaders lazy = new LazyHttpHeaders(message);
+		final HttpHeaders cxf = new HttpHeadersImpl(message);
+		for (final String name : asList("Accept", "accept", "X-Single",
+				"x-single", "X-List", "X-Quoted", "X-Values", "Cookie",
+				"X-Missing"))
+			assertEquals(name, cxf.getRequestHeader(name),
+					lazy.getRequestHeader(name));
+	}
+
+	@Test
+	public void missingHeadersAreEmpty() {
+		final Message message = new MessageImpl();
+		assertTrue(new LazyHttpHeaders(message).getRequestHeader("Accept")
+				.isEmpty());
+	}
+
+	@Test
+	public void requestMethodIsReadFromTheMessage() {
+		final Message message = new MessageImpl();
+		message.put(Message.HTTP_REQUEST_METHOD, "PUT");
+		assertEquals("PUT", new LazyRequest(message).getMethod());
+	}
+
+	@Test
+	public void contextViewsAreInjected() throws Exception {
+		final TestServer server = TestServer.start(Guice
+				.createInjector(new CXFServerModule() {
+					@Override
+					protected void configure() {
+						serve().enableCustomScopes();
+						publish(ContextResource.class);
+					}
+				}));
+		try {
+			assertEquals("POST a text/x-test text/x-test", server.post(
+					"/context/a", "text/x-test", "body").body);
+			assertEquals("GET context", server.get("/context").body);
+		} finally {
+			server.stop();
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static org.apache.cxf.helpers.IOUtils.readStringFromStream;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.MessageBodyReader;
+
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.ext.RequestHandler;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class RequestEntityTest {
+
+	public static class Book {
+		final String title;
+
+		Book(String title) {
+			this.title = title;
+		}
+	}
+
+	/** Untyped reader, as the JSON and JAXB providers are */
+	@javax.ws.rs.ext.Provider
+	@Consumes("text/book")
+	public static class BookReader implements MessageBodyReader<Object> {
+		static final AtomicInteger reads = new AtomicInteger();
+
+		@Override
+		public boolean isReadable(Class<?> type, Type genericType,
+				Annotation[] annotations, MediaType mediaType) {
+			return type == Book.class;
+		}
+
+		@Override
+		public Object readFrom(Class<Object> type, Type genericType,
+				Annotation[] annotations, MediaType mediaType,
+				MultivaluedMap<String, String> httpHeaders,
+				InputStream entityStream) throws IOException {
+			reads.incrementAndGet();
+			return new Book(readStringFromStream(entityStream));
+		}
+	}
+
+	/** Reads the entity before the operation is selected */
+	@javax.ws.rs.ext.Provider
+	public static class BookHandler implements RequestHandler {
+		@Override
+		public Response handleRequest(Message m,
+				ClassResourceInfo resourceClass) {
+			if ("text/book".equals(m.get(Message.CONTENT_TYPE)))
+				RequestEntity.of(m).get(Book.class);
+			return null;
+		}
+	}
+
+	@Path("/")
+	@Consumes("text/plain")
+	@Produces("text/plain")
+	public static class EntityResource {
+		@Inject
+		private Provider<RequestEntity> entity;
+
+		@Inject
+		private Provider<Exchange> exchange;
+
+		@POST
+		@Path("param/{id}")
+		public String param(@PathParam("id") String id,
+				@QueryParam("q") String q, String body) {
+			return entity.get().get(String.class);
+		}
+
+		@POST
+		@Path("raw")
+		public String raw() {
+			final InputStream in = exchange.get().getInMessage()
+					.getContent(InputStream.class);
+			final String body = entity.get().get(String.class);
+			return body
+					+ " "
+					+ (in == exchange.get().getInMessage()
+							.getContent(InputStream.class));
+		}
+
+		@POST
+		@Path("book")
+		@Consumes("text/book")
+		public String book(Book book) {
+			return book.title + " " + (book == entity.get().get(Book.class))
+					+ " " + BookReader.reads.get();
+		}
+	}
+
+	private TestServer server;
+
+	private static TestServer start(final boolean memoized, Long limit)
+			throws Exception {
+		final JAXRSServerFactoryBean bean = Guice.createInjector(
+				new CXFServerModule() {
+					@Override
+					protected void configure() {
+						if (memoized)
+							serve().withMemoizedRequestEntity();
+						else
+							serve().enableCustomScopes();
+						readBody(BookReader.class);
+						handleRequest(BookHandler.class);
+						publish(EntityResource.class);
+					}
+				}).getInstance(JAXRSServerFactoryBean.class);
+		if (limit != null)
+			bean.getProperties(true).put(RequestEntity.BUFFER_LIMIT, limit);
+		return TestServer.start(bean);
+	}
+
+	private static String postBook(boolean memoized, Long limit, String body)
+			throws Exception {
+		final TestServer server = start(memoized, limit);
+		try {
+			final TestServer.Reply reply = server.post("/book", "text/book",
+					body);
+			return reply.status + " " + reply.body;
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		BookReader.reads.set(0);
+		server = TestServer.start(Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().enableCustomScopes();
+				publish(EntityResource.class);
+			}
+		}));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void entityIsTheBodyParameter() throws Exception {
+		assertEquals("body",
+				server.post("/param/id?q=query", "text/plain", "body").body);
+	}
+
+	@Test
+	public void bodyIsNotBufferedWithoutEntityParameter() throws Exception {
+		assertEquals("body true",
+				server.post("/raw", "text/plain", "body").body);
+	}
+
+	@Test
+	public void readersAreNotWrappedByDefault() throws Exception {
+		assertEquals("200 title false 2", postBook(false, null, "title"));
+	}
+
+	@Test
+	public void memoizedEntityIsTheBodyParameter() throws Exception {
+		assertEquals("200 title true 1", postBook(true, null, "title"));
+	}
+
+	@Test
+	public void bufferedBodiesAreLimited() throws Exception {
+		assertEquals("413", postBook(true, 4L, "title").substring(0, 3));
+		assertEquals("200 titl true 1", postBook(true, 4L, "titl"));
+	}
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.code.inject.jaxrs.scope.RequestParameters.bindPathParameter;
+import static com.google.code.inject.jaxrs.scope.RequestParameters.bindQueryParameter;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.annotation.Retention;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+
+public class RequestParametersTest {
+
+	@Retention(RUNTIME)
+	public @interface Nullable {
+	}
+
+	/** A service with no access to the resource method arguments */
+	public static class BookService {
+		@Inject
+		@PathParameter("id")
+		private Provider<Long> id;
+
+		@Inject
+		@PathParameter("title")
+		private Provider<String> title;
+
+		@Inject
+		@QueryParameter("page")
+		private Provider<Integer> page;
+
+		@Inject
+		@QueryParameter("q")
+		private Provider<String> q;
+
+		@Inject
+		@Nullable
+		@QueryParameter("missing")
+		private Provider<String> missing;
+
+		String describe() {
+			return id.get() + "|" + title.get() + "|" + page.get() + "|"
+					+ q.get() + "|" + missing.get();
+		}
+	}
+
+	@Path("/books/{id}/{title}")
+	@Produces("text/plain")
+	public static class BookResource {
+		@Inject
+		private BookService service;
+
+		@GET
+		public String get() {
+			return service.describe();
+		}
+	}
+
+	private TestServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = TestServer.start(Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().enableCustomScopes();
+				publish(BookResource.class);
+			}
+		}, new AbstractModule() {
+			@Override
+			protected void configure() {
+				bindPathParameter(binder(), "id", Long.class);
+				bindPathParameter(binder(), "title", String.class);
+				bindQueryParameter(binder(), "page", Integer.class);
+				bindQueryParameter(binder(), "q", String.class);
+				bindQueryParameter(binder(), "missing", String.class);
+			}
+		}));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void parametersAreConvertedLikeResourceArguments()
+			throws Exception {
+		assertEquals("42|a b|2|x y|null",
+				server.get("/books/42/a%20b?page=2&q=x+y").body);
+	}
+
+	@Test
+	public void parametersBelongToTheirRequest() throws Exception {
+		assertEquals("1|a|null|null|null", server.get("/books/1/a").body);
+		assertEquals("2|b|3|null|null", server.get("/books/2/b?page=3").body);
+	}
+
+	/** unlike a resource argument, which would fail with a 404 */
+	@Test
+	public void unconvertibleParametersFailTheProvision() throws Exception {
+		assertEquals(500, server.get("/books/x/a").status);
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.metrics.MBeans;
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+
+public class RequestScopeMetricsTest {
+
+	@RequestScope
+	public static class Item {
+	}
+
+	private static final AbstractModule METRICS = new AbstractModule() {
+		@Override
+		protected void configure() {
+			bind(RequestScopeMetrics.class).toProvider(
+					new Provider<RequestScopeMetrics>() {
+						@Override
+						public RequestScopeMetrics get() {
+							return RequestScopeMetrics.create(MBeans.forServer("test"));
+						}
+					}).in(Singleton.class);
+		}
+	};
+
+	/** Provide the item twice in a request handled by the injector */
+	private static void request(Injector injector) {
+		final Provider<Item> item = injector.getProvider(Item.class);
+		final Exchange exchange = new ExchangeImpl();
+		final Message message = new MessageImpl();
+		message.setExchange(exchange);
+		exchange.setInMessage(message);
+		final GuiceInterceptorWrapper wrapper = new GuiceInterceptorWrapper(
+				new AbstractPhaseInterceptor<Message>(Phase.INVOKE) {
+					@Override
+					public void handleMessage(Message message) {
+						assertSame(item.get(), item.get());
+					}
+				});
+		injector.injectMembers(wrapper);
+		wrapper.handleMessage(message);
+	}
+
+	private static RequestScopeKeyStatistics itemStatistics(
+			RequestScopeMetrics metrics) {
+		for (final RequestScopeKeyStatistics stats : metrics
+				.getKeyStatistics())
+			if (stats.getKey().equals(Key.get(Item.class).toString()))
+				return stats;
+		throw new AssertionError("No statistics of " + Item.class);
+	}
+
+	@Test
+	public void metricsBelongToTheirInjector() {
+		final Injector measured = Guice.createInjector(new CXFScopes.Module(),
+				METRICS);
+		final Injector other = Guice.createInjector(new CXFScopes.Module(),
+				METRICS);
+		final Injector unmeasured = Guice
+				.createInjector(new CXFScopes.Module());
+
+		request(measured);
+		request(unmeasured);
+		request(measured);
+		request(other);
+
+		final RequestScopeMetrics metrics = measured
+				.getInstance(RequestScopeMetrics.class);
+		assertEquals(2, metrics.getRequestStatistics().getRequests());
+		assertEquals(2, metrics.getRequestStatistics().getObjectsCreated());
+		assertEquals(2, itemStatistics(metrics).getProvisions());
+		assertEquals(2, itemStatistics(metrics).getHits());
+
+		final RequestScopeMetrics otherMetrics = other
+				.getInstance(RequestScopeMetrics.class);
+		assertEquals(1, otherMetrics.getRequestStatistics().getRequests());
+		assertEquals(1, itemStatistics(otherMetrics).getProvisions());
+
+		assertNull(unmeasured.getExistingBinding(Key
+				.get(RequestScopeMetrics.class)));
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestScopeStoreTest {
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(8);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void slotsAreAllocatedOncePerKey() {
+		final RequestScopeStore.Slots slots = new RequestScopeStore.Slots();
+		final Object a = new Object();
+		final Object b = new Object();
+
+		assertEquals(0, slots.indexOf(a));
+		assertEquals(1, slots.indexOf(b));
+		assertEquals(0, slots.indexOf(a));
+		assertEquals(2, slots.size());
+	}
+
+	@Test
+	public void storeIsSizedByItsServerSlots() {
+		final RequestScopeStore.Slots slots = new RequestScopeStore.Slots();
+		slots.indexOf(new Object());
+		slots.indexOf(new Object());
+
+		// slots of another server don't grow the store
+		final RequestScopeStore.Slots other = new RequestScopeStore.Slots();
+		for (int i = 0; i < 100; i++)
+			other.indexOf(new Object());
+
+		final Exchange exchange = new ExchangeImpl();
+		final RequestScopeStore store = RequestScopeStore.of(exchange, slots);
+		assertEquals(2, store.capacity());
+		assertSame(store, RequestScopeStore.of(exchange, other));
+		assertSame(store, RequestScopeStore.attached(exchange));
+	}
+
+	@Test
+	public void slotsAllocatedLaterOverflow() {
+		final RequestScopeStore.Slots slots = new RequestScopeStore.Slots();
+		final RequestScopeStore store = RequestScopeStore.of(
+				new ExchangeImpl(), slots);
+		final int slot = slots.indexOf(new Object());
+
+		assertEquals(null, store.get(slot));
+		assertEquals("a", store.putIfAbsent(slot, "a"));
+		assertEquals("a", store.putIfAbsent(slot, "b"));
+		assertEquals("a", store.get(slot));
+	}
+
+	@Test
+	public void concurrentStoresKeepTheFirstValue() throws Exception {
+		final RequestScopeStore.Slots slots = new RequestScopeStore.Slots();
+		final int inArray = slots.indexOf(new Object());
+		final RequestScopeStore store = RequestScopeStore.of(
+				new ExchangeImpl(), slots);
+		final int overflow = slots.indexOf(new Object());
+
+		for (final int slot : new int[] { inArray, overflow }) {
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						start.await();
+						return store.putIfAbsent(slot, new Object());
+					}
+				}));
+			}
+			start.countDown();
+
+			final List<Object> stored = new ArrayList<Object>();
+			for (final Future<Object> result : results)
+				stored.add(result.get());
+			for (final Object value : stored)
+				assertSame(store.get(slot), value);
+		}
+	}
+
+	@Test
+	public void concurrentSlotAllocationIsUnique() throws Exception {
+		final RequestScopeStore.Slots slots = new RequestScopeStore.Slots();
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 64; i++) {
+			results.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					start.await();
+					return slots.indexOf(new Object());
+				}
+			}));
+		}
+		start.countDown();
+
+		final boolean[] seen = new boolean[64];
+		for (final Future<Integer> result : results) {
+			final int index = result.get();
+			assertFalse("index allocated twice", seen[index]);
+			seen[index] = true;
+		}
+		assertEquals(64, slots.size());
+	}
+
+	@Test
+	public void scopeIsHandedOffWhenTheOwnerLeaves() throws Exception {
+		final RequestScopeStore store = RequestScopeStore.of(
+				new ExchangeImpl(), new RequestScopeStore.Slots());
+		final Thread current = Thread.currentThread();
+
+		assertTrue(store.acquire(current));
+		assertFalse(store.acquire(current));
+
+		final Future<Boolean> other = executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return store.acquire(Thread.currentThread());
+			}
+		});
+		try {
+			other.get(200, MILLISECONDS);
+			fail("scope acquired by two threads");
+		} catch (final TimeoutException e) {
+			// still waiting for the owner
+		}
+
+		store.release(current);
+		assertTrue(other.get(1, SECONDS));
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.code.inject.jaxrs.scope.CXFScopes.REQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import org.apache.cxf.message.Exchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.code.inject.jaxrs.CXFServerModule;
+import com.google.code.inject.jaxrs.TestServer;
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.name.Names;
+
+public class RequestScopeTest {
+
+	@RequestScope
+	public static class Item {
+	}
+
+	@Path("/")
+	@Produces("text/plain")
+	public static class ScopeResource {
+		@Inject
+		private Provider<Item> item;
+
+		@Inject
+		private Provider<Exchange> exchange;
+
+		@GET
+		@Path("item")
+		public String item() {
+			final Item first = item.get();
+			return (first == item.get()) ? String.valueOf(System
+					.identityHashCode(first)) : "different";
+		}
+
+		@GET
+		@Path("capacity")
+		public String capacity() {
+			item.get();
+			return String.valueOf(RequestScopeStore.attached(exchange.get())
+					.capacity());
+		}
+	}
+
+	private TestServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = TestServer.start(Guice.createInjector(new CXFServerModule() {
+			@Override
+			protected void configure() {
+				serve().enableCustomScopes();
+				publish(ScopeResource.class);
+			}
+		}));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void instancesAreSharedWithinAnExchange() throws Exception {
+		final String first = server.get("/item").body;
+		final String second = server.get("/item").body;
+
+		assertNotEquals("different", first);
+		assertNotEquals("different", second);
+		assertNotEquals(first, second);
+	}
+
+	@Test
+	public void otherInjectorsDontGrowTheStore() throws Exception {
+		server.get("/capacity");
+		final String capacity = server.get("/capacity").body;
+
+		for (int i = 0; i < 20; i++) {
+			Guice.createInjector(new CXFScopes.Module(), new AbstractModule() {
+				@Override
+				protected void configure() {
+					for (int k = 0; k < 50; k++)
+						bind(Key.get(Item.class, Names.named("item" + k))).to(
+								Item.class).in(REQUEST);
+				}
+			});
+		}
+
+		assertEquals(capacity, server.get("/capacity").body);
+	}
+
+}
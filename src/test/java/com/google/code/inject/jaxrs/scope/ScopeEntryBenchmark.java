@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012 Jakub Bocheński (kuba.bochenski@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.code.inject.jaxrs.scope;
+
+import static com.google.code.inject.jaxrs.scope.CXFScopes.REQUEST;
+import static org.apache.cxf.phase.Phase.INVOKE;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.code.inject.jaxrs.scope.CXFScopes.RequestScope;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Key;
+import com.google.inject.Provider;
+
+/**
+ * Cost of entering and leaving the request scope, and of providing a request
+ * scoped object inside it.
+ * <p>
+ * Run with <tt>-prof gc</tt>, <tt>gc.alloc.rate.norm</tt> should stay at 0
+ * bytes per operation for <tt>enterAndExit</tt> and <tt>scopeHit</tt>: the
+ * exchange and its scope store are created once, as the transport does per
+ * request, and reused by every operation. <tt>provideScoped</tt> goes through
+ * the injector's provider, which allocates its own context in Guice 3.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@State(Scope.Thread)
+public class ScopeEntryBenchmark {
+
+	@RequestScope
+	public static class Item {
+	}
+
+	private static final class Delegate extends
+			AbstractPhaseInterceptor<Message> {
+		private final Provider<Item> item;
+		Object provided;
+
+		Delegate(Provider<Item> item) {
+			super(INVOKE);
+			this.item = item;
+		}
+
+		@Override
+		public void handleMessage(Message message) {
+			if (item != null)
+				provided = item.get();
+		}
+	}
+
+	private GuiceInterceptorWrapper enterAndExit;
+	private GuiceInterceptorWrapper provideScoped;
+	private Delegate provider;
+	private GuiceInterceptorWrapper scopeHit;
+	private Delegate scoped;
+	private Message message;
+
+	@Setup
+	public void setUp() {
+		final Provider<Item> item = Guice.createInjector(
+				new CXFScopes.Module(), new AbstractModule() {
+					@Override
+					protected void configure() {
+						bind(Item.class).in(REQUEST);
+					}
+				}).getProvider(Item.class);
+		final Provider<Item> unscoped = new Provider<Item>() {
+			@Override
+			public Item get() {
+				return new Item();
+			}
+		};
+
+		enterAndExit = new GuiceInterceptorWrapper(new Delegate(null));
+		provider = new Delegate(item);
+		provideScoped = new GuiceInterceptorWrapper(provider);
+		scoped = new Delegate(REQUEST.scope(Key.get(Item.class), unscoped));
+		scopeHit = new GuiceInterceptorWrapper(scoped);
+
+		final Exchange exchange = new ExchangeImpl();
+		message = new MessageImpl();
+		message.setExchange(exchange);
+		exchange.setInMessage(message);
+
+		enterAndExit.handleMessage(message);
+		provideScoped.handleMessage(message);
+		scopeHit.handleMessage(message);
+	}
+
+	@Benchmark
+	public Message enterAndExit() {
+		enterAndExit.handleMessage(message);
+		return message;
+	}
+
+	@Benchmark
+	public Object provideScoped() {
+		provideScoped.handleMessage(message);
+		return provider.provided;
+	}
+
+	@Benchmark
+	public Object scopeHit() {
+		scopeHit.handleMessage(message);
+		return scoped.provided;
+	}
+
+}